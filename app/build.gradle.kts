@@ -27,6 +27,11 @@ android {
         }
     }
 
+    androidResources {
+        // The reranker maps the model straight out of the APK, which needs it stored uncompressed.
+        noCompress += "onnx"
+    }
+
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_21
         targetCompatibility = JavaVersion.VERSION_21
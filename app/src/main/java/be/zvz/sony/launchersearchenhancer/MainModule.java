@@ -3,6 +3,7 @@ package be.zvz.sony.launchersearchenhancer;
 import android.annotation.SuppressLint;
 import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.text.TextUtils;
 import android.util.Log;
@@ -11,27 +12,34 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import be.zvz.sony.launchersearchenhancer.autofolder.AutoFolderController;
+import be.zvz.sony.launchersearchenhancer.autofolder.SemanticAppGrouper;
 import be.zvz.sony.launchersearchenhancer.record.AppForms;
 import be.zvz.sony.launchersearchenhancer.record.ScoredApp;
 import be.zvz.sony.launchersearchenhancer.reranker.SemanticReranker;
 import be.zvz.sony.launchersearchenhancer.search.AppScorer;
 import be.zvz.sony.launchersearchenhancer.search.QueryProcessor;
+import be.zvz.sony.launchersearchenhancer.search.SynonymIndex;
 import be.zvz.sony.launchersearchenhancer.store.LearningStore;
-import be.zvz.sony.launchersearchenhancer.store.PendingQueryStore;
-import be.zvz.sony.launchersearchenhancer.store.QueryHistoryStore;
-import be.zvz.sony.launchersearchenhancer.store.SearchSessionStore;
+import be.zvz.sony.launchersearchenhancer.store.SearchJournal;
+import be.zvz.sony.launchersearchenhancer.store.SearchSession;
 import be.zvz.sony.launchersearchenhancer.text.TextNormalizer;
+import be.zvz.sony.launchersearchenhancer.util.LauncherBindings;
 import be.zvz.sony.launchersearchenhancer.util.ReflectionUtils;
 import io.github.libxposed.api.XposedInterface;
 import io.github.libxposed.api.XposedModule;
@@ -47,35 +55,37 @@ public class MainModule extends XposedModule {
     private static final int DEFAULT_MAX_RESULTS = 5;
     private static final int MIN_RESULTS = 3;
     private static final int MAX_RESULTS_CAP = 7;
+    private static final long RERANK_BUDGET_MS = 40;
+    private static final int SYNONYM_MAX_TERMS = 1024;
+    // Learned queries alone refresh the synonym table at most this often.
+    private static final long SYNONYM_MIN_INTERVAL_MS = 60L * 60L * 1000L;
 
     private static final String CLASS_DEFAULT_SEARCH_ALGO = "com.android.launcher3.allapps.search.DefaultAppSearchAlgorithm";
-    private static final String CLASS_GEHIDE_APPS = "com.sonymobile.launcher.gameenhancer.GeHideAppsList";
-    private static final String CLASS_APPINFO = "com.android.launcher3.model.data.AppInfo";
-    private static final String CLASS_ADAPTER_ITEM = "com.android.launcher3.allapps.BaseAllAppsAdapter$AdapterItem";
-    private static final String CLASS_HOTSEAT_QSB = "com.android.searchlauncher.HotseatQsbWidget";
     private static final String CLASS_ITEM_CLICK_HANDLER = "com.android.launcher3.touch.ItemClickHandler";
     private static final String CLASS_ACTIVITY_ALL_APPS = "com.android.launcher3.allapps.ActivityAllAppsContainerView";
+    private static final String CLASS_ALPHABETICAL_APPS = "com.android.launcher3.allapps.AlphabeticalAppsList";
 
     private static XposedModule module;
 
     // Reflection handles (set once during hook registration)
-    private static Method sAsAppMethod;
-    private static Method sGetGeHideAppsMethod;
-    private static Field sTitleField;
-    private static Field sComponentNameField;
-    private static Method sGetPackageNameMethod;
-    private static Field sFallbackSearchViewField;
-    private static Method sGetTargetComponentMethod;
+    private static LauncherBindings sBindings;
 
     // Shared state
     private static final ConcurrentHashMap<String, List<String>> sQueryConversions = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<String, AppForms> sAppFormsCache = new ConcurrentHashMap<>();
-    private static final SemanticReranker sSemanticReranker = new SemanticReranker();
+    private static final SemanticReranker sSemanticReranker = SemanticReranker.remote();
     private static final AutoFolderController sAutoFolderController = new AutoFolderController(sSemanticReranker);
     private static final LearningStore sLearningStore = new LearningStore();
-    private static final QueryHistoryStore sQueryHistoryStore = new QueryHistoryStore();
-    private static final SearchSessionStore sSearchSessionStore = new SearchSessionStore();
-    private static final PendingQueryStore sPendingQueryStore = new PendingQueryStore();
+    private static final SearchSession sSearchSession = new SearchSession();
+    private static final SearchJournal sSearchJournal = new SearchJournal();
+
+    // Distilled synonym table, and what it was built from
+    private static volatile SynonymIndex sSynonymIndex = SynonymIndex.EMPTY;
+    private static volatile long sSynonymAppSignature;
+    private static volatile int sSynonymGeneration;
+    private static volatile long sSynonymBuiltAt;
+    private static final AtomicBoolean sSynonymInFlight = new AtomicBoolean();
+    private static final AtomicInteger sLearningGeneration = new AtomicInteger();
 
     // UsageStats cache (populated once per package load, keyed by package name)
     private static volatile Map<String, Integer> sUsageBonusCache;
@@ -95,6 +105,11 @@ public class MainModule extends XposedModule {
 
         try {
             ClassLoader cl = param.getClassLoader();
+            // Every hook below reads the launcher through sBindings, so none is registered without it.
+            sBindings = LauncherBindings.bind(cl);
+            if (sBindings.foldersFailure() != null) {
+                logError("Auto folder members are unavailable", sBindings.foldersFailure());
+            }
 
             Class<?> searchAlgoClass = cl.loadClass(CLASS_DEFAULT_SEARCH_ALGO);
             Method getTitleMatchResult = ReflectionUtils.findMethod(searchAlgoClass,
@@ -109,30 +124,10 @@ public class MainModule extends XposedModule {
             } catch (Throwable ignored) {
             }
 
-            Class<?> geHideClass = cl.loadClass(CLASS_GEHIDE_APPS);
-            sGetGeHideAppsMethod = ReflectionUtils.findMethod(geHideClass, "getGeHideAppsList", Context.class);
-
-            Class<?> appInfoClass = cl.loadClass(CLASS_APPINFO);
-            sTitleField = ReflectionUtils.findField(appInfoClass, "title");
-            sComponentNameField = ReflectionUtils.findField(appInfoClass, "componentName");
-
-            sGetPackageNameMethod = ReflectionUtils.findMethod(
-                    cl.loadClass("android.content.ComponentName"), "getPackageName");
-
-            sAsAppMethod = ReflectionUtils.findMethod(
-                    cl.loadClass(CLASS_ADAPTER_ITEM), "asApp", appInfoClass);
-
-            Class<?> hotseatClass = cl.loadClass(CLASS_HOTSEAT_QSB);
-            sFallbackSearchViewField = ReflectionUtils.findField(hotseatClass, "mFallbackSearchView");
+            Class<?> hotseatClass = cl.loadClass(LauncherBindings.CLASS_HOTSEAT_QSB);
             hook(ReflectionUtils.findMethod(hotseatClass, "onSearchResult", String.class, ArrayList.class),
                     StaleResultBlockerHooker.class);
 
-            try {
-                sGetTargetComponentMethod = ReflectionUtils.findMethod(
-                        cl.loadClass("com.android.launcher3.model.data.ItemInfo"), "getTargetComponent");
-            } catch (Throwable ignored) {
-            }
-
             try {
                 hook(ReflectionUtils.findMethod(cl.loadClass(CLASS_ITEM_CLICK_HANDLER), "onClick", View.class),
                         ClickLearningHooker.class);
@@ -148,6 +143,13 @@ public class MainModule extends XposedModule {
                 logError("All apps menu hook registration failed", t);
             }
 
+            try {
+                hook(ReflectionUtils.findMethod(cl.loadClass(CLASS_ALPHABETICAL_APPS), "onAppsUpdated"),
+                        AppsUpdatedHooker.class);
+            } catch (Throwable t) {
+                logError("App list update hook registration failed", t);
+            }
+
             logInfo("Search enhancement hooks registered successfully.");
         } catch (Throwable t) {
             logError("Failed to register hooks", t);
@@ -189,15 +191,27 @@ public class MainModule extends XposedModule {
         }
     }
 
+    @XposedHooker
+    private static class AppsUpdatedHooker implements Hooker {
+        @AfterInvocation
+        public static void after(@NonNull AfterHookCallback callback) {
+            try {
+                sAutoFolderController.onAppsUpdated(callback.getThisObject(), module);
+            } catch (Throwable t) {
+                logError("AppsUpdatedHooker failed", t);
+            }
+        }
+    }
+
     @XposedHooker
     private static class StaleResultBlockerHooker implements Hooker {
         @BeforeInvocation
         public static void before(@NonNull BeforeHookCallback callback) {
             try {
-                if (sFallbackSearchViewField == null) return;
+                if (sBindings == null) return;
                 Object thiz = callback.getThisObject();
                 String callbackQuery = TextNormalizer.normalize((String) callback.getArgs()[0]);
-                Object editTextObj = sFallbackSearchViewField.get(thiz);
+                Object editTextObj = sBindings.fallbackSearchView(thiz);
                 if (editTextObj instanceof TextView tv) {
                     String current = TextNormalizer.normalize(String.valueOf(tv.getText()));
                     if (!TextUtils.isEmpty(current) && !current.equals(callbackQuery)) {
@@ -230,18 +244,19 @@ public class MainModule extends XposedModule {
                 long now = System.currentTimeMillis();
 
                 sLearningStore.observe(clicked.getContext(), current, component);
+                sLearningGeneration.incrementAndGet();
+                sSearchJournal.click(sSearchSession.sessionId(), component);
 
-                String bridge = sPendingQueryStore.pollLatestUnresolvedFromOlderSession(
-                        current, now, 20_000L, sSearchSessionStore.getSessionId());
+                String bridge = sSearchSession.pollUnresolvedFromOlderSession(current, now, 20_000L);
                 if (TextUtils.isEmpty(bridge)) {
                     bridge = QueryProcessor.pickBridgeCandidate(current,
-                            sQueryHistoryStore.getRecentBefore(current, now, 15_000L, 4));
+                            sSearchSession.recentBefore(current, now, 15_000L, 4));
                 }
                 if (!TextUtils.isEmpty(bridge)) {
                     sLearningStore.observeWeakBridge(clicked.getContext(), bridge, component);
                 }
 
-                sPendingQueryStore.markResolved(current, now);
+                sSearchSession.markResolved(current);
             } catch (Throwable t) {
                 logError("ClickLearningHooker failed", t);
             }
@@ -258,18 +273,25 @@ public class MainModule extends XposedModule {
                 String rawQuery = (String) callback.getArgs()[2];
                 String qNorm = TextNormalizer.normalize(rawQuery);
                 long now = System.currentTimeMillis();
+                boolean journal = sSearchJournal.isEnabled(context);
 
                 if (TextUtils.isEmpty(qNorm)) {
-                    sSearchSessionStore.onCleared(now);
+                    if (journal) sSearchJournal.clear(sSearchSession.sessionId());
+                    sSearchSession.onCleared();
                 } else {
-                    sSearchSessionStore.record(qNorm, now);
-                    sQueryHistoryStore.record(qNorm, now);
+                    sSearchSession.recordQuery(qNorm, now);
                 }
 
-                ArrayList<Object> result = buildSearchResults(context, originalApps, rawQuery);
+                long started = System.nanoTime();
+                ArrayList<String> shown = journal ? new ArrayList<>() : null;
+                ArrayList<Object> result = buildSearchResults(context, originalApps, rawQuery, shown);
+                if (journal && !TextUtils.isEmpty(qNorm)) {
+                    sSearchJournal.query(sSearchSession.sessionId(), rawQuery,
+                            System.nanoTime() - started, shown.toArray(new String[0]));
+                }
 
                 if (!TextUtils.isEmpty(qNorm) && result.isEmpty()) {
-                    sPendingQueryStore.recordNoResult(qNorm, now, sSearchSessionStore.getSessionId());
+                    sSearchSession.recordNoResult(qNorm, now);
                 }
                 callback.returnAndSkip(result);
             } catch (Throwable t) {
@@ -280,8 +302,9 @@ public class MainModule extends XposedModule {
 
     // --- Search engine ---
 
-    private static ArrayList<Object> buildSearchResults(Context context, List<?> originalApps, String rawQuery)
-            throws Throwable {
+    // shownKeys, when given, receives the keys of the returned apps in order.
+    private static ArrayList<Object> buildSearchResults(Context context, List<?> originalApps, String rawQuery,
+                                                        List<String> shownKeys) throws Throwable {
         String queryNorm = TextNormalizer.normalize(rawQuery);
         ArrayList<Object> output = new ArrayList<>();
         if (TextUtils.isEmpty(queryNorm)) return output;
@@ -294,23 +317,29 @@ public class MainModule extends XposedModule {
 
         ArrayList<Object> candidates = new ArrayList<>();
         if (originalApps != null) candidates.addAll(originalApps);
-        if (context != null && sGetGeHideAppsMethod != null) {
-            Object ge = sGetGeHideAppsMethod.invoke(null, context);
-            if (ge instanceof List<?> list) candidates.addAll(list);
-        }
+        candidates.addAll(sBindings.geHiddenApps(context));
 
         Map<String, Integer> usageBonus = getUsageBonus(context);
+        Map<String, Float> synonymHits = sSynonymIndex.lookup(queryVariants);
+        LearningStore.Bonuses learned = sLearningStore.getBonuses(context, queryNorm);
 
         ArrayList<ScoredApp> scored = new ArrayList<>(candidates.size());
         HashSet<String> dedupe = new HashSet<>();
+        HashMap<String, Object> appsByKey = new HashMap<>();
+        Set<Object> lexicalMatches = Collections.newSetFromMap(new IdentityHashMap<>());
 
         for (Object app : candidates) {
             if (app == null) continue;
-            String key = appKey(app);
-            if (!TextUtils.isEmpty(key) && !dedupe.add(key)) continue;
+            // One component read per item serves the key, the learned-click lookup and the package.
+            ComponentName cn = sBindings.componentName(app);
+            String key = cn == null ? null : String.valueOf(cn);
+            if (!TextUtils.isEmpty(key)) {
+                if (!dedupe.add(key)) continue;
+                appsByKey.put(key, app);
+            }
 
-            String title = getAppTitle(app);
-            String pkg = getPackageName(app);
+            String title = sBindings.title(app);
+            String pkg = cn == null ? "" : cn.getPackageName();
 
             // Cache AppForms by component key
             String cacheKey = key != null ? key : title + "|" + pkg;
@@ -320,15 +349,13 @@ public class MainModule extends XposedModule {
                 sAppFormsCache.put(cacheKey, forms);
             }
 
-            int best = 0;
-            for (String q : queryVariants) {
-                best = Math.max(best, AppScorer.scoreWithForms(q, forms));
-            }
-
-            String component = getComponentFromItem(app);
-            if (context != null && !TextUtils.isEmpty(component)) {
-                best += sLearningStore.getBonus(context, queryNorm, component);
+            int best = AppScorer.scoreQuery(queryVariants, forms);
+            if (key != null) {
+                best += learned.get(key);
             }
+            if (best > 0) lexicalMatches.add(app);
+            // A synonym alone ranks the app but leaves it to the semantic fallback below MIN_RESULTS.
+            best = Math.max(best, AppScorer.scoreSynonym(synonymHits, key));
 
             // UsageStats bonus
             if (!TextUtils.isEmpty(pkg)) {
@@ -340,27 +367,145 @@ public class MainModule extends XposedModule {
             }
         }
 
-        scored.sort((a, b) -> {
-            int cmp = Integer.compare(b.score(), a.score());
-            if (cmp != 0) return cmp;
-            cmp = a.normTitle().compareTo(b.normTitle());
-            return cmp != 0 ? cmp : a.normPkg().compareTo(b.normPkg());
-        });
+        scored.sort(ScoredApp.RANKING);
 
         ArrayList<SemanticReranker.Candidate> aiCandidates = new ArrayList<>(scored.size());
         for (ScoredApp s : scored) {
             aiCandidates.add(new SemanticReranker.Candidate(s.app(), s.rawTitle(), s.rawPkg(), s.score()));
         }
-        sSemanticReranker.rerank(context, rawQuery, aiCandidates);
+        sSemanticReranker.rerank(context, rawQuery, aiCandidates, MAX_RESULTS_CAP, RERANK_BUDGET_MS);
+
+        refreshSemanticIndex(context, appsByKey);
+        if (lexicalMatches.size() < MIN_RESULTS) {
+            mergeSemanticMatches(context, rawQuery, aiCandidates, lexicalMatches, appsByKey);
+        }
 
         int count = Math.min(dynamicResultCount(aiCandidates), aiCandidates.size());
-        if (sAsAppMethod == null) return output;
         for (int i = 0; i < count; i++) {
-            output.add(sAsAppMethod.invoke(null, aiCandidates.get(i).app));
+            Object app = aiCandidates.get(i).app;
+            output.add(sBindings.adapterItem(app));
+            if (shownKeys != null) shownKeys.add(String.valueOf(appKey(app)));
         }
         return output;
     }
 
+    // --- Semantic retrieval fallback ---
+
+    private static void refreshSemanticIndex(Context context, Map<String, Object> appsByKey) {
+        if (context == null || appsByKey.isEmpty()) return;
+        long signature = SemanticReranker.appIndexSignature(appsByKey.keySet());
+        if (sSearchJournal.needsCatalog(signature)) journalCatalog(signature, appsByKey);
+        if (!sSemanticReranker.isAppIndexCurrent(signature)) {
+            ArrayList<SemanticReranker.IndexEntry> entries = new ArrayList<>(appsByKey.size());
+            for (Map.Entry<String, Object> e : appsByKey.entrySet()) {
+                Object app = e.getValue();
+                entries.add(new SemanticReranker.IndexEntry(e.getKey(), getAppTitle(app), getPackageName(app)));
+            }
+            sSemanticReranker.refreshAppIndex(context, signature, entries);
+        }
+        refreshSynonyms(context, signature, appsByKey.values());
+    }
+
+    private static void journalCatalog(long signature, Map<String, Object> appsByKey) {
+        int n = appsByKey.size();
+        String[] keys = new String[n];
+        String[] titles = new String[n];
+        String[] packages = new String[n];
+        int i = 0;
+        for (Map.Entry<String, Object> e : appsByKey.entrySet()) {
+            keys[i] = e.getKey();
+            titles[i] = getAppTitle(e.getValue());
+            packages[i] = getPackageName(e.getValue());
+            i++;
+        }
+        sSearchJournal.catalog(signature, keys, titles, packages);
+    }
+
+    // Rebuilt in the background when the app set changes, or (rate-limited) when new queries
+    // were learned; the distillation queues behind any index build for the same signature.
+    private static void refreshSynonyms(Context context, long appSignature, Collection<Object> apps) {
+        long now = System.currentTimeMillis();
+        int generation = sLearningGeneration.get();
+        if (appSignature == sSynonymAppSignature
+                && (generation == sSynonymGeneration || now - sSynonymBuiltAt < SYNONYM_MIN_INTERVAL_MS)) {
+            return;
+        }
+        if (!sSynonymInFlight.compareAndSet(false, true)) return;
+
+        sSemanticReranker.distillSynonyms(context, appSignature, synonymVocabulary(context, apps), table -> {
+            try {
+                if (table == null) return;
+                SynonymIndex.Builder builder = new SynonymIndex.Builder();
+                for (Map.Entry<String, List<SemanticReranker.Hit>> e : table.entrySet()) {
+                    for (SemanticReranker.Hit hit : e.getValue()) builder.add(e.getKey(), hit.key(), hit.similarity());
+                }
+                sSynonymIndex = builder.build();
+                sSynonymAppSignature = appSignature;
+                sSynonymGeneration = generation;
+                sSynonymBuiltAt = now;
+                logInfo("Synonym index: " + sSynonymIndex.size() + " terms");
+            } finally {
+                sSynonymInFlight.set(false);
+            }
+        });
+    }
+
+    // Category prompt words, learned queries and title words, normalized like queries.
+    private static List<String> synonymVocabulary(Context context, Collection<Object> apps) {
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        for (String t : SemanticAppGrouper.vocabulary()) addSynonymTerm(terms, t);
+        for (String q : sLearningStore.learnedQueries(context)) addSynonymTerm(terms, q);
+        for (Object app : apps) {
+            for (String w : getAppTitle(app).split("\\s+")) addSynonymTerm(terms, w);
+        }
+        ArrayList<String> out = new ArrayList<>(Math.min(terms.size(), SYNONYM_MAX_TERMS));
+        for (String t : terms) {
+            if (out.size() == SYNONYM_MAX_TERMS) break;
+            out.add(t);
+        }
+        return out;
+    }
+
+    private static void addSynonymTerm(Set<String> terms, String raw) {
+        String n = TextNormalizer.normalize(raw);
+        if (n.length() >= 2) terms.add(n);
+    }
+
+    // Lexical hits stay on top, semantic hits follow, and apps that only carried a usage bonus or a
+    // synonym go last.
+    private static void mergeSemanticMatches(Context context, String rawQuery,
+                                             List<SemanticReranker.Candidate> candidates,
+                                             Set<Object> lexicalMatches, Map<String, Object> appsByKey) {
+        HashSet<String> exclude = new HashSet<>();
+        for (Object app : lexicalMatches) {
+            String key = appKey(app);
+            if (key != null) exclude.add(key);
+        }
+
+        List<SemanticReranker.Hit> hits = sSemanticReranker.retrieve(context, rawQuery, exclude,
+                MIN_RESULTS - lexicalMatches.size());
+        if (hits.isEmpty()) return;
+
+        ArrayList<SemanticReranker.Candidate> merged = new ArrayList<>(candidates.size() + hits.size());
+        ArrayList<SemanticReranker.Candidate> rest = new ArrayList<>();
+        HashSet<String> retrieved = new HashSet<>();
+        for (SemanticReranker.Candidate c : candidates) {
+            (lexicalMatches.contains(c.app) ? merged : rest).add(c);
+        }
+        for (SemanticReranker.Hit hit : hits) {
+            Object app = appsByKey.get(hit.key());
+            if (app == null) continue;
+            retrieved.add(hit.key());
+            merged.add(sSemanticReranker.retrievedCandidate(app, getAppTitle(app), getPackageName(app), hit));
+        }
+        for (SemanticReranker.Candidate c : rest) {
+            if (!retrieved.contains(appKey(c.app))) merged.add(c);
+        }
+
+        candidates.clear();
+        candidates.addAll(merged);
+    }
+
     // --- Dynamic result count ---
 
     private static int dynamicResultCount(List<SemanticReranker.Candidate> candidates) {
@@ -475,51 +620,24 @@ public class MainModule extends XposedModule {
         return "";
     }
 
+    // AppInfo.componentName only, matching the keys search learns clicks under.
     private static String getComponentFromItem(Object item) {
-        try {
-            if (item == null) return "";
-            if (sComponentNameField != null) {
-                Object cn = sComponentNameField.get(item);
-                if (cn != null) return String.valueOf(cn);
-            }
-            if (sGetTargetComponentMethod != null) {
-                Object cn = sGetTargetComponentMethod.invoke(item);
-                if (cn != null) return String.valueOf(cn);
-            }
-        } catch (Throwable ignored) {
-        }
-        return "";
+        if (item == null || sBindings == null) return "";
+        ComponentName cn = sBindings.componentName(item);
+        return cn == null ? "" : String.valueOf(cn);
     }
 
     private static String getAppTitle(Object app) {
-        try {
-            if (sTitleField == null) return "";
-            Object o = sTitleField.get(app);
-            return o == null ? "" : String.valueOf(o);
-        } catch (Throwable ignore) {
-            return "";
-        }
+        return sBindings.title(app);
     }
 
     private static String getPackageName(Object app) {
-        try {
-            if (sComponentNameField == null || sGetPackageNameMethod == null) return "";
-            Object cn = sComponentNameField.get(app);
-            if (cn == null) return "";
-            Object pkg = sGetPackageNameMethod.invoke(cn);
-            return pkg == null ? "" : String.valueOf(pkg);
-        } catch (Throwable ignore) {
-            return "";
-        }
+        ComponentName cn = sBindings.componentName(app);
+        return cn == null ? "" : cn.getPackageName();
     }
 
     private static String appKey(Object app) {
-        try {
-            if (sComponentNameField == null) return null;
-            Object cn = sComponentNameField.get(app);
-            return cn == null ? null : String.valueOf(cn);
-        } catch (Throwable ignore) {
-            return null;
-        }
+        ComponentName cn = sBindings.componentName(app);
+        return cn == null ? null : String.valueOf(cn);
     }
 }
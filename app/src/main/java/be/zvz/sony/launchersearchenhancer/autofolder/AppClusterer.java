@@ -0,0 +1,124 @@
+package be.zvz.sony.launchersearchenhancer.autofolder;
+
+// Average-linkage agglomerative clustering of unit vectors using the nearest-neighbour chain
+// algorithm. It takes O(n^2) time and keeps one n x n similarity matrix, about 1 MB for 500 apps.
+// Merging stops at a cut derived from the data: the mean pairwise similarity plus CUT_SPREAD
+// standard deviations, and never below MIN_LINK. The number of clusters therefore follows the
+// app set instead of a fixed k.
+final class AppClusterer {
+
+    private static final float MIN_LINK = 0.5f;
+    private static final float CUT_SPREAD = 1.5f;
+
+    private AppClusterer() {
+    }
+
+    // Cluster id per row of vectors[from .. from + rows). Rows in one cluster share the id, and a
+    // row without a vector gets -1. Ids are row indices, so a cluster's id is one of its rows.
+    static int[] cluster(float[][] vectors, int from, int rows) {
+        int[] out = new int[rows];
+        int dim = 0;
+        int m = 0;
+        int[] present = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            out[r] = -1;
+            float[] v = vectors[from + r];
+            if (v == null || (dim != 0 && v.length != dim)) continue;
+            dim = v.length;
+            present[m++] = r;
+        }
+        if (m == 0) return out;
+
+        float[] sim = new float[m * m];
+        double sum = 0;
+        double sumSq = 0;
+        for (int i = 0; i < m; i++) {
+            float[] a = vectors[from + present[i]];
+            for (int j = i + 1; j < m; j++) {
+                float[] b = vectors[from + present[j]];
+                float dot = 0f;
+                for (int k = 0; k < dim; k++) dot += a[k] * b[k];
+                sim[i * m + j] = dot;
+                sim[j * m + i] = dot;
+                sum += dot;
+                sumSq += (double) dot * dot;
+            }
+        }
+        long pairs = (long) m * (m - 1) / 2;
+        float cut = MIN_LINK;
+        if (pairs > 0) {
+            double mean = sum / pairs;
+            double std = Math.sqrt(Math.max(0.0, sumSq / pairs - mean * mean));
+            cut = (float) Math.max(MIN_LINK, mean + CUT_SPREAD * std);
+        }
+
+        int[] parent = new int[m];
+        int[] size = new int[m];
+        boolean[] active = new boolean[m];
+        for (int i = 0; i < m; i++) {
+            parent[i] = i;
+            size[i] = 1;
+            active[i] = true;
+        }
+
+        // Each chain entry's nearest neighbour is the entry above it, so similarities rise along
+        // the chain until its top two are each other's nearest neighbours. Average linkage never
+        // makes a merged cluster closer to a third one than its parts were, so a reciprocal pair
+        // below the cut is final: neither side can be merged later.
+        int[] chain = new int[m];
+        int depth = 0;
+        int remaining = m;
+        int next = 0;
+        while (remaining > 1) {
+            if (depth == 0) {
+                while (!active[next]) next++;
+                chain[depth++] = next;
+            }
+            int a = chain[depth - 1];
+            int prev = depth > 1 ? chain[depth - 2] : -1;
+            int b = prev;
+            float best = prev >= 0 ? sim[a * m + prev] : Float.NEGATIVE_INFINITY;
+            for (int x = 0; x < m; x++) {
+                if (x == a || !active[x]) continue;
+                float s = sim[a * m + x];
+                if (s > best) {
+                    best = s;
+                    b = x;
+                }
+            }
+            if (b < 0) break;
+            if (b != prev) {
+                chain[depth++] = b;
+                continue;
+            }
+
+            depth -= 2;
+            if (best < cut) {
+                active[a] = false;
+                active[b] = false;
+                remaining -= 2;
+                continue;
+            }
+
+            float wa = size[a];
+            float wb = size[b];
+            for (int x = 0; x < m; x++) {
+                if (x == a || x == b || !active[x]) continue;
+                float s = (wa * sim[a * m + x] + wb * sim[b * m + x]) / (wa + wb);
+                sim[a * m + x] = s;
+                sim[x * m + a] = s;
+            }
+            size[a] += size[b];
+            active[b] = false;
+            parent[b] = a;
+            remaining--;
+        }
+
+        for (int i = 0; i < m; i++) {
+            int root = i;
+            while (parent[root] != root) root = parent[root];
+            out[present[i]] = present[root];
+        }
+        return out;
+    }
+}
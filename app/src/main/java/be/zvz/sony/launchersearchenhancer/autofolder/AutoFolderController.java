@@ -19,11 +19,12 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.PopupMenu;
+import android.widget.ProgressBar;
 import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.lang.reflect.Constructor;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -35,6 +36,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -43,7 +45,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import be.zvz.sony.launchersearchenhancer.R;
 import be.zvz.sony.launchersearchenhancer.autofolder.SemanticAppGrouper.AppCandidate;
 import be.zvz.sony.launchersearchenhancer.autofolder.SemanticAppGrouper.Group;
+import be.zvz.sony.launchersearchenhancer.reranker.ModelSpec;
 import be.zvz.sony.launchersearchenhancer.reranker.SemanticReranker;
+import be.zvz.sony.launchersearchenhancer.util.LauncherBindings;
+import be.zvz.sony.launchersearchenhancer.util.ReflectionUtils;
 import io.github.libxposed.api.XposedModule;
 
 public final class AutoFolderController {
@@ -53,18 +58,39 @@ public final class AutoFolderController {
     private static final int FALLBACK_ID_REARRANGE = 0x5A1A1003;
     private static final int FALLBACK_ID_EXIT = 0x5A1A1004;
     private static final int MENU_ID_OPENROUTER_AUTO_FOLDER = 0x5A1A1005;
+    private static final int MENU_ID_SEARCH_MODEL = 0x5A1A1006;
+    private static final int MENU_ID_CLUSTER_AUTO_FOLDER = 0x5A1A1007;
+    private static final int MENU_ID_FILE_NEW_APPS = 0x5A1A1008;
     private static final String MODULE_PACKAGE = "be.zvz.sony.launchersearchenhancer";
     private static final String OPENROUTER_PREFS = "xlauncher_openrouter_auto_folder";
     private static final String PREF_OPENROUTER_API_KEY = "api_key";
     private static final String PREF_OPENROUTER_MODEL = "model";
     private static final String PREF_OPENROUTER_PROMPT = "prompt";
     private static final String DEFAULT_OPENROUTER_MODEL = "openrouter/auto";
+    private static final String AUTO_FOLDER_PREFS = "xlauncher_auto_folder";
+    private static final String PREF_FILE_NEW_APPS = "file_new_apps";
+    // More new apps than this at once is a restore or a profile sync, not an install.
+    private static final int MAX_NEW_APPS = 4;
+    private static final float FILE_MIN_SIMILARITY = 0.6f;
+    private static final float FILE_MIN_MARGIN = 0.04f;
+    private static final String PREF_TIME_LIMIT_SECONDS = "time_limit_seconds";
+    // Room for one OpenRouter request and its repair; local runs finish well inside it.
+    private static final int DEFAULT_TIME_LIMIT_SECONDS = 120;
     private static final String TAG = "AutoFolderController";
 
+    private final SemanticReranker reranker;
     private final SemanticAppGrouper grouper;
     private final OpenRouterAppGrouper openRouterGrouper = new OpenRouterAppGrouper();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final AtomicBoolean running = new AtomicBoolean(false);
+    private final FolderCentroids centroids = new FolderCentroids();
+    private final SuggestionCache suggestionCache = new SuggestionCache();
+    // Main thread only.
+    private IdleScheduler idleScheduler;
+    private AutoFolderJob backgroundJob;
+    private volatile WeakReference<Object> installedAppsView = new WeakReference<>(null);
+    // Main thread only: every app key last seen in the tray, loose or in a folder.
+    private Set<String> knownAppKeys;
     private final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
         @Override
         public Thread newThread(Runnable runnable) {
@@ -75,6 +101,7 @@ public final class AutoFolderController {
     });
 
     public AutoFolderController(SemanticReranker reranker) {
+        this.reranker = reranker;
         this.grouper = new SemanticAppGrouper(reranker);
     }
 
@@ -83,7 +110,56 @@ public final class AutoFolderController {
         View button = getActiveMenuButton(appsView);
         if (button == null) return;
 
+        installedAppsView = new WeakReference<>(appsView);
         button.setOnClickListener(view -> showEnhancedMenu(appsView, view, module));
+
+        if (idleScheduler == null) {
+            try {
+                Context context = button.getContext().getApplicationContext();
+                idleScheduler = new IdleScheduler(context, mainHandler,
+                        () -> precompute(module), this::stopPrecompute);
+                idleScheduler.register();
+            } catch (Throwable t) {
+                log(module, "Failed to schedule auto folder precomputation", t);
+            }
+        }
+    }
+
+    // Main thread, while charging with the screen off: computes local and cluster suggestions for
+    // the current loose apps so a later tap can apply them without waiting on the model. Runs
+    // without a time limit and is cancelled when the device wakes, unplugs or a user run starts.
+    private void precompute(XposedModule module) {
+        Object appsView = installedAppsView.get();
+        if (appsView == null || running.get() || backgroundJob != null) return;
+        Snapshot snapshot;
+        try {
+            snapshot = collectSnapshot(appsView);
+        } catch (Throwable t) {
+            log(module, "Failed to collect app tray snapshot for precomputation", t);
+            return;
+        }
+        if (snapshot.candidates.size() < 2) return;
+
+        Context labelContext = moduleContext(snapshot.context, module);
+        AutoFolderJob job = new AutoFolderJob(mainHandler, 0L, null);
+        backgroundJob = job;
+        worker.execute(() -> {
+            try {
+                suggestions(snapshot.context, snapshot.candidates, labelContext, false, job);
+                suggestions(snapshot.context, snapshot.candidates, labelContext, true, job);
+            } catch (CancellationException ignored) {
+            } catch (Throwable t) {
+                log(module, "Auto folder precomputation failed", t);
+            } finally {
+                mainHandler.post(() -> {
+                    if (backgroundJob == job) backgroundJob = null;
+                });
+            }
+        });
+    }
+
+    private void stopPrecompute() {
+        if (backgroundJob != null) backgroundJob.cancel();
     }
 
     private void showEnhancedMenu(Object appsView, View anchor, XposedModule module) {
@@ -113,10 +189,24 @@ public final class AutoFolderController {
                             moduleString(context, module, R.string.auto_folder_menu_title,
                                     "AI Auto Folder (Local)"))
                     .setVisible(!inEditMode && !inSearchMode);
-            menu.add(Menu.NONE, MENU_ID_OPENROUTER_AUTO_FOLDER, 4,
+            menu.add(Menu.NONE, MENU_ID_CLUSTER_AUTO_FOLDER, 4,
+                            moduleString(context, module, R.string.auto_folder_cluster_menu_title,
+                                    "AI Auto Folder (Clusters)"))
+                    .setVisible(!inEditMode && !inSearchMode);
+            menu.add(Menu.NONE, MENU_ID_OPENROUTER_AUTO_FOLDER, 5,
                             moduleString(context, module, R.string.auto_folder_openrouter_menu_title,
                                     "AI Auto Folder (OpenRouter)"))
                     .setVisible(!inEditMode && !inSearchMode);
+            menu.add(Menu.NONE, MENU_ID_FILE_NEW_APPS, 6,
+                            moduleString(context, module, R.string.auto_folder_file_new_apps_menu_title,
+                                    "File new apps into folders"))
+                    .setCheckable(true)
+                    .setChecked(autoFolderPrefs(context).getBoolean(PREF_FILE_NEW_APPS, false))
+                    .setVisible(!inEditMode && !inSearchMode);
+            menu.add(Menu.NONE, MENU_ID_SEARCH_MODEL, 7,
+                            moduleString(context, module, R.string.search_model_menu_title,
+                                    "Search model"))
+                    .setVisible(!inEditMode && !inSearchMode);
 
             popupMenu.setOnMenuItemClickListener(item ->
                     handleMenuItem(appsView, anchor, adapter, ids, item, module));
@@ -150,13 +240,27 @@ public final class AutoFolderController {
                 return true;
             }
             if (itemId == MENU_ID_AUTO_FOLDER) {
-                confirmAndStart(appsView, anchor, module);
+                confirmAndStart(appsView, anchor, module, false);
+                return true;
+            }
+            if (itemId == MENU_ID_CLUSTER_AUTO_FOLDER) {
+                confirmAndStart(appsView, anchor, module, true);
                 return true;
             }
             if (itemId == MENU_ID_OPENROUTER_AUTO_FOLDER) {
                 showOpenRouterDialog(appsView, anchor, module);
                 return true;
             }
+            if (itemId == MENU_ID_FILE_NEW_APPS) {
+                boolean enabled = !item.isChecked();
+                item.setChecked(enabled);
+                autoFolderPrefs(anchor.getContext()).edit().putBoolean(PREF_FILE_NEW_APPS, enabled).apply();
+                return true;
+            }
+            if (itemId == MENU_ID_SEARCH_MODEL) {
+                showSearchModelDialog(appsView, anchor, module);
+                return true;
+            }
         } catch (Throwable t) {
             log(module, "All apps menu action failed", t);
             toast(anchor.getContext(), module, R.string.auto_folder_action_failed,
@@ -173,10 +277,11 @@ public final class AutoFolderController {
         if (activity == null) return;
 
         ClassLoader cl = appsView.getClass().getClassLoader();
-        Class<?> sortModeClass = cl.loadClass("com.sonymobile.launcher.allapps.SortMode");
+        LauncherBindings.Folders f = bindings(appsView).folders();
+        Class<?> sortModeClass = f.sortModeClass;
         Object sortMode = invokeNoThrow(adapter, "getSortMode");
         if (sortMode == null) {
-            sortMode = enumValue(sortModeClass, "ALPHABETICAL");
+            sortMode = f.sortAlphabetical;
         }
 
         Class<?> fragmentClass = cl.loadClass("com.sonymobile.launcher.allapps.SortModeDialogFragment");
@@ -188,7 +293,7 @@ public final class AutoFolderController {
         transaction.commitAllowingStateLoss();
     }
 
-    private void confirmAndStart(Object appsView, View anchor, XposedModule module) {
+    private void confirmAndStart(Object appsView, View anchor, XposedModule module, boolean clusters) {
         if (running.get()) {
             toast(anchor.getContext(), module, R.string.auto_folder_already_running,
                     "Auto foldering is already running.");
@@ -226,13 +331,106 @@ public final class AutoFolderController {
                         + "Existing folders and their contents will be kept unchanged.",
                 snapshot.candidates.size());
 
+        String title = clusters
+                ? moduleString(snapshot.context, moduleContext,
+                        R.string.auto_folder_cluster_menu_title, "AI Auto Folder (Clusters)")
+                : moduleString(snapshot.context, moduleContext,
+                        R.string.auto_folder_menu_title, "AI Auto Folder (Local)");
+
+        EditText timeLimitInput = timeLimitInput(activity, snapshot.context);
+        int padding = dp(activity, 20);
+        LinearLayout content = new LinearLayout(activity);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.setPadding(padding, padding / 2, padding, 0);
+        addDialogText(content, activity, message);
+        addDialogField(content, activity, moduleString(snapshot.context, moduleContext,
+                R.string.auto_folder_time_limit_label, "Time limit (seconds)"), timeLimitInput);
+
         new AlertDialog.Builder(activity)
-                .setTitle(moduleString(snapshot.context, moduleContext,
-                        R.string.auto_folder_menu_title, "AI Auto Folder (Local)"))
-                .setMessage(message)
+                .setTitle(title)
+                .setView(content)
                 .setPositiveButton(moduleString(snapshot.context, moduleContext,
                                 R.string.auto_folder_confirm_positive, "Run"),
-                        (dialog, which) -> startAutoFolder(appsView, snapshot, module, moduleContext))
+                        (dialog, which) -> {
+                            saveTimeLimit(snapshot.context, timeLimitInput);
+                            startAutoFolder(appsView, snapshot, module, moduleContext, clusters);
+                        })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void showSearchModelDialog(Object appsView, View anchor, XposedModule module) {
+        Context context = anchor.getContext();
+        Activity activity = activityFor(appsView);
+        if (activity == null) {
+            toast(context, module, R.string.auto_folder_launcher_unavailable,
+                    "Couldn't find the Launcher screen.");
+            return;
+        }
+
+        List<ModelSpec> models;
+        try {
+            models = reranker.availableModels(context);
+        } catch (Throwable t) {
+            log(module, "Failed to list search models", t);
+            toast(context, module, R.string.search_model_list_failed,
+                    "Couldn't load the search models.");
+            return;
+        }
+
+        String activeId = reranker.activeModelId(context);
+        String[] labels = new String[models.size()];
+        int checked = 0;
+        for (int i = 0; i < labels.length; i++) {
+            ModelSpec spec = models.get(i);
+            labels[i] = spec.label();
+            if (spec.id().equals(activeId)) checked = i;
+        }
+
+        Context moduleContext = moduleContext(context, module);
+        new AlertDialog.Builder(activity)
+                .setTitle(moduleString(context, moduleContext,
+                        R.string.search_model_menu_title, "Search model"))
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    dialog.dismiss();
+                    String id = models.get(which).id();
+                    if (id.equals(activeId)) return;
+                    reranker.setActiveModel(context, id);
+                    toast(context, moduleContext, R.string.search_model_switching,
+                            "Switching search model...");
+                })
+                .setNeutralButton(moduleString(context, moduleContext,
+                                R.string.search_model_dimensions_title, "Vector size"),
+                        (dialog, which) -> showEmbeddingDimensionsDialog(activity, context, moduleContext))
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    // Smaller vectors make the cache and the app index cheaper at some cost in accuracy.
+    private void showEmbeddingDimensionsDialog(Activity activity, Context context, Context moduleContext) {
+        int[] values = {SemanticReranker.DIMENSIONS_AUTO, SemanticReranker.DIMENSIONS_FULL, 256, 128};
+        String[] labels = {
+                moduleString(context, moduleContext, R.string.search_model_dimensions_auto, "Automatic"),
+                moduleString(context, moduleContext, R.string.search_model_dimensions_full, "Full"),
+                moduleString(context, moduleContext, R.string.search_model_dimensions_prefix, "%d dimensions", 256),
+                moduleString(context, moduleContext, R.string.search_model_dimensions_prefix, "%d dimensions", 128),
+        };
+        int current = reranker.embeddingDimensions(context);
+        int checked = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == current) checked = i;
+        }
+
+        new AlertDialog.Builder(activity)
+                .setTitle(moduleString(context, moduleContext,
+                        R.string.search_model_dimensions_title, "Vector size"))
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    dialog.dismiss();
+                    if (values[which] == current) return;
+                    reranker.setEmbeddingDimensions(context, values[which]);
+                    toast(context, moduleContext, R.string.search_model_switching,
+                            "Switching search model...");
+                })
                 .setNegativeButton(android.R.string.cancel, null)
                 .show();
     }
@@ -299,6 +497,8 @@ public final class AutoFolderController {
                         + "Do not group apps unless the relationship is clear.");
         promptInput.setText(prefs.getString(PREF_OPENROUTER_PROMPT, defaultPrompt));
 
+        EditText timeLimitInput = timeLimitInput(activity, snapshot.context);
+
         int padding = dp(activity, 20);
         LinearLayout content = new LinearLayout(activity);
         content.setOrientation(LinearLayout.VERTICAL);
@@ -315,6 +515,8 @@ public final class AutoFolderController {
                 R.string.auto_folder_openrouter_model_label, "Model"), modelInput);
         addDialogField(content, activity, moduleString(snapshot.context, moduleContext,
                 R.string.auto_folder_openrouter_prompt_label, "Custom conditions"), promptInput);
+        addDialogField(content, activity, moduleString(snapshot.context, moduleContext,
+                R.string.auto_folder_time_limit_label, "Time limit (seconds)"), timeLimitInput);
 
         ScrollView scrollView = new ScrollView(activity);
         scrollView.addView(content);
@@ -356,6 +558,7 @@ public final class AutoFolderController {
                             .putString(PREF_OPENROUTER_MODEL, model)
                             .putString(PREF_OPENROUTER_PROMPT, prompt)
                             .apply();
+                    saveTimeLimit(snapshot.context, timeLimitInput);
                     dialog.dismiss();
 
                     startOpenRouterAutoFolder(appsView, snapshot, module, moduleContext,
@@ -370,6 +573,100 @@ public final class AutoFolderController {
             XposedModule module,
             Context moduleContext,
             OpenRouterAppGrouper.Config config
+    ) {
+        runJob(appsView, snapshot, module, moduleContext,
+                moduleString(snapshot.context, moduleContext, R.string.auto_folder_openrouter_menu_title,
+                        "AI Auto Folder (OpenRouter)"),
+                moduleString(snapshot.context, moduleContext, R.string.auto_folder_openrouter_analyzing,
+                        "OpenRouter is analyzing your apps..."),
+                job -> openRouterGrouper.group(snapshot.context, snapshot.candidates, config, job),
+                () -> toast(snapshot.context, moduleContext, R.string.auto_folder_openrouter_analysis_failed,
+                        "OpenRouter analysis couldn't be completed."));
+    }
+
+    private void startAutoFolder(
+            Object appsView,
+            Snapshot snapshot,
+            XposedModule module,
+            Context moduleContext,
+            boolean clusters
+    ) {
+        List<Group> cached = suggestionCache.groups(reranker.activeVectorSpace(snapshot.context),
+                SuggestionCache.appSetHash(snapshot.candidates), clusters);
+        if (cached != null) {
+            if (!running.compareAndSet(false, true)) {
+                toast(snapshot.context, moduleContext, R.string.auto_folder_already_running,
+                        "Auto foldering is already running.");
+                return;
+            }
+            try {
+                applyAndReport(appsView, snapshot, module, moduleContext, cached);
+            } finally {
+                running.set(false);
+            }
+            return;
+        }
+
+        runJob(appsView, snapshot, module, moduleContext,
+                clusters
+                        ? moduleString(snapshot.context, moduleContext,
+                                R.string.auto_folder_cluster_menu_title, "AI Auto Folder (Clusters)")
+                        : moduleString(snapshot.context, moduleContext,
+                                R.string.auto_folder_menu_title, "AI Auto Folder (Local)"),
+                moduleString(snapshot.context, moduleContext, R.string.auto_folder_analyzing,
+                        "AI is analyzing your apps..."),
+                job -> suggestions(snapshot.context, snapshot.candidates, moduleContext, clusters, job),
+                () -> toast(snapshot.context, moduleContext, R.string.auto_folder_analysis_failed,
+                        "AI analysis couldn't be completed."));
+    }
+
+    // Cached groups when neither the loose app set nor the model has changed; otherwise the apps
+    // are regrouped, embedding only those without a cached vector. A run cut short by the time
+    // limit keeps its new vectors but not its groups.
+    private List<Group> suggestions(
+            Context context,
+            List<AppCandidate> apps,
+            Context labelContext,
+            boolean clusters,
+            AutoFolderJob job
+    ) throws Exception {
+        String model = reranker.activeVectorSpace(context);
+        long appSetHash = SuggestionCache.appSetHash(apps);
+        List<Group> cached = suggestionCache.groups(model, appSetHash, clusters);
+        if (cached != null) return cached;
+
+        float[][] vectors = new float[apps.size()][];
+        List<Integer> missing = suggestionCache.vectors(model, apps, vectors);
+        if (!missing.isEmpty()) {
+            ArrayList<AppCandidate> missingApps = new ArrayList<>(missing.size());
+            for (int i : missing) missingApps.add(apps.get(i));
+            float[][] fresh = grouper.embedApps(context, missingApps, job);
+            for (int j = 0; j < fresh.length; j++) vectors[missing.get(j)] = fresh[j];
+            suggestionCache.putVectors(model, apps, vectors);
+        }
+        int embedded = 0;
+        for (float[] v : vectors) {
+            if (v != null) embedded++;
+        }
+        job.progress(embedded, apps.size());
+
+        List<Group> groups = grouper.group(context, apps, vectors, labelContext, clusters);
+        if (!job.isPartial()) suggestionCache.putGroups(model, appSetHash, clusters, groups);
+        return groups;
+    }
+
+    // Runs a grouping task on the worker under a job: a progress dialog whose Cancel stops the job
+    // at its next checkpoint, and the configured time limit, after which the groups found so far
+    // are offered rather than applied.
+    private void runJob(
+            Object appsView,
+            Snapshot snapshot,
+            XposedModule module,
+            Context moduleContext,
+            String title,
+            String message,
+            JobTask task,
+            Runnable onFailure
     ) {
         if (!running.compareAndSet(false, true)) {
             toast(snapshot.context, moduleContext, R.string.auto_folder_already_running,
@@ -377,84 +674,171 @@ public final class AutoFolderController {
             return;
         }
 
-        toast(snapshot.context, moduleContext, R.string.auto_folder_openrouter_analyzing,
-                "OpenRouter is analyzing your apps...");
+        stopPrecompute();
+        Activity activity = activityFor(appsView);
+        JobProgress progress = activity == null ? null : new JobProgress(activity, message);
+        AutoFolderJob job = new AutoFolderJob(mainHandler, timeLimitMillis(snapshot.context), progress);
+        if (progress != null) {
+            progress.show(title, job::cancel);
+        } else {
+            toast(snapshot.context, message);
+        }
+
         worker.execute(() -> {
             List<Group> groups;
             try {
-                groups = openRouterGrouper.group(snapshot.context, snapshot.candidates, config);
+                groups = task.run(job);
+            } catch (CancellationException e) {
+                groups = null;
             } catch (Throwable t) {
-                log(module, "OpenRouter app grouping failed", t);
-                mainHandler.post(() -> {
-                    running.set(false);
-                    toast(snapshot.context, moduleContext,
-                            R.string.auto_folder_openrouter_analysis_failed,
-                            "OpenRouter analysis couldn't be completed.");
-                });
-                return;
+                log(module, "Auto folder grouping failed", t);
+                groups = null;
             }
 
+            List<Group> result = groups;
             mainHandler.post(() -> {
-                try {
-                    ApplyResult result = applyGroups(appsView, groups);
-                    if (result.folderCount == 0) {
-                        toast(snapshot.context, moduleContext, R.string.auto_folder_no_new_folders,
-                                "No new folders can be created.");
-                    } else {
-                        toast(snapshot.context, resultText(snapshot.context, moduleContext, result));
-                    }
-                } catch (Throwable t) {
-                    log(module, "Failed to apply OpenRouter auto folders", t);
-                    toast(snapshot.context, moduleContext, R.string.auto_folder_save_failed,
-                            "Couldn't save the auto folders.");
-                } finally {
-                    running.set(false);
+                running.set(false);
+                if (progress != null) progress.dismiss();
+                if (job.isCancelled()) {
+                    toast(snapshot.context, moduleContext, R.string.auto_folder_cancelled,
+                            "Auto foldering was cancelled.");
+                } else if (result == null) {
+                    onFailure.run();
+                } else if (job.isPartial()) {
+                    offerPartialGroups(appsView, snapshot, module, moduleContext, job, result);
+                } else {
+                    applyAndReport(appsView, snapshot, module, moduleContext, result);
                 }
             });
         });
     }
 
-    private void startAutoFolder(
+    private void offerPartialGroups(
             Object appsView,
             Snapshot snapshot,
             XposedModule module,
-            Context moduleContext
+            Context moduleContext,
+            AutoFolderJob job,
+            List<Group> groups
     ) {
-        if (!running.compareAndSet(false, true)) {
-            toast(snapshot.context, moduleContext, R.string.auto_folder_already_running,
-                    "Auto foldering is already running.");
+        Activity activity = activityFor(appsView);
+        if (groups.isEmpty() || activity == null) {
+            toast(snapshot.context, moduleContext, R.string.auto_folder_time_limit_reached,
+                    "The time limit was reached before any folders were found.");
             return;
         }
+        new AlertDialog.Builder(activity)
+                .setTitle(moduleString(snapshot.context, moduleContext,
+                        R.string.auto_folder_partial_title, "Time limit reached"))
+                .setMessage(moduleString(snapshot.context, moduleContext,
+                        R.string.auto_folder_partial_message,
+                        "%1$d of %2$d apps were analyzed before the time limit. "
+                                + "Create the %3$d folders found so far?",
+                        job.analyzed(), job.total(), groups.size()))
+                .setPositiveButton(moduleString(snapshot.context, moduleContext,
+                                R.string.auto_folder_partial_positive, "Create"),
+                        (dialog, which) -> {
+                            if (!running.compareAndSet(false, true)) {
+                                toast(snapshot.context, moduleContext, R.string.auto_folder_already_running,
+                                        "Auto foldering is already running.");
+                                return;
+                            }
+                            try {
+                                applyAndReport(appsView, snapshot, module, moduleContext, groups);
+                            } finally {
+                                running.set(false);
+                            }
+                        })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    // Main thread.
+    private void applyAndReport(
+            Object appsView,
+            Snapshot snapshot,
+            XposedModule module,
+            Context moduleContext,
+            List<Group> groups
+    ) {
+        try {
+            ApplyResult result = applyGroups(appsView, groups);
+            if (result.folderCount == 0) {
+                toast(snapshot.context, moduleContext, R.string.auto_folder_no_new_folders,
+                        "No new folders can be created.");
+            } else {
+                toast(snapshot.context, resultText(snapshot.context, moduleContext, result));
+            }
+        } catch (Throwable t) {
+            log(module, "Failed to apply auto folders", t);
+            toast(snapshot.context, moduleContext, R.string.auto_folder_save_failed,
+                    "Couldn't save the auto folders.");
+        }
+    }
+
+    // Called after the launcher rebuilds the app list. Apps that were not in the tray before are
+    // filed into the closest existing folder, AI-made or not, when the opt-in is on. Folder
+    // centroids are kept between installs, so a filing costs one embedding and one folder's
+    // database rows; the rest of the drawer keeps its ranks.
+    public void onAppsUpdated(Object appList, XposedModule module) {
+        Object appsView = installedAppsView.get();
+        if (appsView == null || appList == null) return;
+        try {
+            if (invokeNoThrow(appsView, "getPersonalAppList") != appList) return;
+            if (bindings(appsView).foldersFailure() != null) return;
+            // While a job runs the baseline is kept, so apps installed meanwhile are filed by the
+            // next update instead of being taken as known.
+            if (running.get()) return;
+            Context context = ((View) appsView).getContext();
+            Tray tray = collectTray(appsView);
+            Set<String> previous = knownAppKeys;
+            knownAppKeys = tray.allKeys;
+            if (previous == null) return;
+            if (!autoFolderPrefs(context).getBoolean(PREF_FILE_NEW_APPS, false)) return;
+
+            ArrayList<AppCandidate> added = new ArrayList<>();
+            for (AppCandidate app : tray.looseApps) {
+                if (!previous.contains(app.key)) added.add(app);
+            }
+            if (added.isEmpty() || added.size() > MAX_NEW_APPS || tray.folders.isEmpty()) return;
+            fileNewApps(appsView, context, tray.folders, added, module);
+        } catch (Throwable t) {
+            log(module, "Failed to check the app tray for new apps", t);
+        }
+    }
+
+    private void fileNewApps(
+            Object appsView,
+            Context context,
+            List<TrayFolder> folders,
+            List<AppCandidate> added,
+            XposedModule module
+    ) {
+        if (!running.compareAndSet(false, true)) return;
 
-        toast(snapshot.context, moduleContext, R.string.auto_folder_analyzing,
-                "AI is analyzing your apps...");
+        Context moduleContext = moduleContext(context, module);
         worker.execute(() -> {
-            List<Group> groups;
+            List<Filing> filings;
             try {
-                groups = grouper.group(snapshot.context, snapshot.candidates, moduleContext);
+                filings = planFilings(context, folders, added);
             } catch (Throwable t) {
-                log(module, "Semantic app grouping failed", t);
-                mainHandler.post(() -> {
-                    running.set(false);
-                    toast(snapshot.context, moduleContext, R.string.auto_folder_analysis_failed,
-                            "AI analysis couldn't be completed.");
-                });
+                log(module, "Failed to place new apps", t);
+                mainHandler.post(() -> running.set(false));
                 return;
             }
 
             mainHandler.post(() -> {
                 try {
-                    ApplyResult result = applyGroups(appsView, groups);
-                    if (result.folderCount == 0) {
-                        toast(snapshot.context, moduleContext, R.string.auto_folder_no_new_folders,
-                                "No new folders can be created.");
-                    } else {
-                        toast(snapshot.context, resultText(snapshot.context, moduleContext, result));
+                    for (Filing filing : filings) {
+                        if (!fileApp(appsView, filing)) continue;
+                        centroids.add(filing.folder().id(), filing.app().key, filing.vector());
+                        toast(context, moduleString(context, moduleContext,
+                                R.string.auto_folder_new_app_filed,
+                                "%1$s was added to %2$s.",
+                                filing.app().title, filing.folder().title()));
                     }
                 } catch (Throwable t) {
-                    log(module, "Failed to apply auto folders", t);
-                    toast(snapshot.context, moduleContext, R.string.auto_folder_save_failed,
-                            "Couldn't save the auto folders.");
+                    log(module, "Failed to file new apps", t);
                 } finally {
                     running.set(false);
                 }
@@ -462,23 +846,118 @@ public final class AutoFolderController {
         });
     }
 
+    // Worker thread: refreshes centroids of folders whose contents changed, then matches each new
+    // app against them. Member vectors usually come from the embedding cache.
+    private List<Filing> planFilings(Context context, List<TrayFolder> folders, List<AppCandidate> added)
+            throws Exception {
+        Set<Integer> folderIds = new HashSet<>();
+        for (TrayFolder folder : folders) folderIds.add(folder.id());
+        centroids.retain(reranker.activeVectorSpace(context), folderIds);
+
+        ArrayList<TrayFolder> stale = new ArrayList<>();
+        ArrayList<AppCandidate> staleMembers = new ArrayList<>();
+        for (TrayFolder folder : folders) {
+            if (centroids.isCurrent(folder.id(), folder.membersHash())) continue;
+            stale.add(folder);
+            staleMembers.addAll(folder.members());
+        }
+        if (!staleMembers.isEmpty()) {
+            float[][] vectors = grouper.embedApps(context, staleMembers);
+            int at = 0;
+            for (TrayFolder folder : stale) {
+                int count = folder.members().size();
+                float[][] slice = new float[count][];
+                System.arraycopy(vectors, at, slice, 0, count);
+                at += count;
+                centroids.put(folder.id(), folder.membersHash(), slice);
+            }
+        }
+
+        Map<Integer, TrayFolder> byId = new HashMap<>();
+        for (TrayFolder folder : folders) byId.put(folder.id(), folder);
+        float[][] vectors = grouper.embedApps(context, added);
+        ArrayList<Filing> filings = new ArrayList<>();
+        for (int i = 0; i < added.size(); i++) {
+            FolderCentroids.Match match = centroids.nearest(vectors[i]);
+            if (match == null || match.similarity() < FILE_MIN_SIMILARITY) continue;
+            if (match.similarity() - match.secondSimilarity() < FILE_MIN_MARGIN) continue;
+            filings.add(new Filing(added.get(i), byId.get(match.folderId()), vectors[i]));
+        }
+        return filings;
+    }
+
+    // Main thread. Writes only the moved app and the target folder's item locations; the new app
+    // leaves a gap in the top-level ranks instead of renumbering the drawer.
+    private boolean fileApp(Object appsView, Filing filing) throws Exception {
+        Object personalAppList = invokeRequired(appsView, "getPersonalAppList");
+        @SuppressWarnings("unchecked")
+        ArrayList<Object> ownOrderApps = (ArrayList<Object>) ownOrderApps(personalAppList);
+        int index = indexOfIdentity(ownOrderApps, filing.app().app);
+        if (index < 0 || indexOfIdentity(ownOrderApps, filing.folder().folder()) < 0) return false;
+
+        LauncherBindings.Folders f = bindings(appsView).folders();
+        Object launcher = activityContextFor(appsView);
+        if (launcher == null || !f.launcherClass.isInstance(launcher)) return false;
+        ModelWrites writes = new ModelWrites(f, launcher);
+        Method updateAdapterItems = findMethod(personalAppList.getClass(), "updateAdapterItems",
+                boolean.class);
+
+        Object app = filing.app().app;
+        ownOrderApps.remove(index);
+        f.add(filing.folder().folder(), app);
+        writes.moveIntoFolder(filing.folder().folder());
+        updateAdapterItems.invoke(personalAppList, true);
+        return true;
+    }
+
+    private Tray collectTray(Object appsView) throws Exception {
+        Object personalAppList = invokeRequired(appsView, "getPersonalAppList");
+        ArrayList<?> ownOrderApps = ownOrderApps(personalAppList);
+        LauncherBindings b = bindings(appsView);
+        LauncherBindings.Folders f = b.folders();
+
+        Tray tray = new Tray();
+        for (int i = 0; i < ownOrderApps.size(); i++) {
+            Object item = ownOrderApps.get(i);
+            if (f.isFolder(item)) {
+                ArrayList<AppCandidate> members = new ArrayList<>();
+                long membersHash = 0L;
+                for (Object member : f.contents(item)) {
+                    String key = componentKey(b, member);
+                    if (TextUtils.isEmpty(key)) continue;
+                    tray.allKeys.add(key);
+                    members.add(candidate(b, member, key, i));
+                    membersHash += FolderCentroids.keyHash(key);
+                }
+                int id = f.id(item);
+                if (id >= 0 && !members.isEmpty()) {
+                    tray.folders.add(new TrayFolder(item, id, titleOf(b, item), members, membersHash));
+                }
+            } else if (b.isApp(item)) {
+                String key = componentKey(b, item);
+                if (TextUtils.isEmpty(key)) continue;
+                tray.allKeys.add(key);
+                tray.looseApps.add(candidate(b, item, key, i));
+            }
+        }
+        return tray;
+    }
+
     private Snapshot collectSnapshot(Object appsView) throws Exception {
         Context context = ((View) appsView).getContext();
         Object personalAppList = invokeRequired(appsView, "getPersonalAppList");
         ArrayList<?> ownOrderApps = ownOrderApps(personalAppList);
-
-        ClassLoader cl = appsView.getClass().getClassLoader();
-        Class<?> appInfoClass = cl.loadClass("com.android.launcher3.model.data.AppInfo");
-        Class<?> folderInfoClass = cl.loadClass("com.android.launcher3.model.data.FolderInfo");
+        LauncherBindings b = bindings(appsView);
+        LauncherBindings.Folders f = b.folders();
 
         ArrayList<AppCandidate> candidates = new ArrayList<>();
 
         for (int i = 0; i < ownOrderApps.size(); i++) {
             Object item = ownOrderApps.get(i);
-            if (!folderInfoClass.isInstance(item) && appInfoClass.isInstance(item)) {
-                String key = componentKey(item);
+            if (!f.isFolder(item) && b.isApp(item)) {
+                String key = componentKey(b, item);
                 if (TextUtils.isEmpty(key)) continue;
-                candidates.add(new AppCandidate(item, key, titleOf(item), packageNameOf(item), i));
+                candidates.add(candidate(b, item, key, i));
             }
         }
 
@@ -491,39 +970,21 @@ public final class AutoFolderController {
         Object personalAppList = invokeRequired(appsView, "getPersonalAppList");
         @SuppressWarnings("unchecked")
         ArrayList<Object> ownOrderApps = (ArrayList<Object>) ownOrderApps(personalAppList);
-
-        ClassLoader cl = appsView.getClass().getClassLoader();
-        Class<?> appInfoClass = cl.loadClass("com.android.launcher3.model.data.AppInfo");
-        Class<?> folderInfoClass = cl.loadClass("com.android.launcher3.model.data.FolderInfo");
-        Class<?> itemInfoClass = cl.loadClass("com.android.launcher3.model.data.ItemInfo");
-        Class<?> launcherClass = cl.loadClass("com.android.launcher3.Launcher");
-        Class<?> modelWriterClass = cl.loadClass("com.android.launcher3.model.ModelWriter");
-        Class<?> sortModeClass = cl.loadClass("com.sonymobile.launcher.allapps.SortMode");
+        LauncherBindings b = bindings(appsView);
+        LauncherBindings.Folders f = b.folders();
 
         Object launcher = activityContextFor(appsView);
-        if (launcher == null || !launcherClass.isInstance(launcher)) {
+        if (launcher == null || !f.launcherClass.isInstance(launcher)) {
             throw new IllegalStateException("Launcher activity context is unavailable");
         }
-        Object modelWriter = invokeRequired(launcher, "getModelWriter");
-
-        Method addItemToDatabaseSync = findMethod(modelWriterClass, "addItemToDatabaseSync",
-                itemInfoClass, int.class, int.class, int.class, int.class);
-        Method moveItemInDatabase = findMethod(modelWriterClass, "moveItemInDatabase",
-                itemInfoClass, int.class, int.class, int.class, int.class);
-        Method moveAllAppsItemsInDatabase = findMethod(modelWriterClass, "moveAllAppsItemsInDatabase",
-                ArrayList.class);
-        Method updateFolderItems = findMethod(folderInfoClass, "updateItemLocationsInDatabaseBatch",
-                launcherClass);
-        Method addToFolder = findMethod(folderInfoClass, "add", itemInfoClass);
-        Method setFolderTitle = findMethod(folderInfoClass, "setTitle",
-                CharSequence.class, modelWriterClass);
-        Method setSortMode = findMethod(appsView.getClass(), "setSortMode", sortModeClass);
+        ModelWrites writes = new ModelWrites(f, launcher);
+
+        Method setSortMode = findMethod(appsView.getClass(), "setSortMode", f.sortModeClass);
         Method updateAdapterItems = findMethod(personalAppList.getClass(), "updateAdapterItems",
                 boolean.class);
 
-        CurrentApps current = collectCurrentApps(ownOrderApps, appInfoClass, folderInfoClass);
-        ArrayList<ApplyGroup> applyGroups = buildApplyGroups(semanticGroups, current, folderInfoClass,
-                addToFolder, setFolderTitle);
+        CurrentApps current = collectCurrentApps(b, ownOrderApps);
+        ArrayList<ApplyGroup> applyGroups = buildApplyGroups(b, semanticGroups, current);
         if (applyGroups.isEmpty()) return new ApplyResult(0, 0);
 
         Map<String, ApplyGroup> appToGroup = new HashMap<>();
@@ -531,15 +992,15 @@ public final class AutoFolderController {
         for (ApplyGroup group : applyGroups) {
             appCount += group.apps.size();
             for (Object app : group.apps) {
-                appToGroup.put(componentKey(app), group);
+                appToGroup.put(componentKey(b, app), group);
             }
         }
 
         ArrayList<Object> newOrder = new ArrayList<>(ownOrderApps.size());
         Set<ApplyGroup> insertedGroups = Collections.newSetFromMap(new IdentityHashMap<>());
         for (Object item : ownOrderApps) {
-            if (appInfoClass.isInstance(item)) {
-                ApplyGroup group = appToGroup.get(componentKey(item));
+            if (b.isApp(item)) {
+                ApplyGroup group = appToGroup.get(componentKey(b, item));
                 if (group != null) {
                     if (insertedGroups.add(group)) {
                         newOrder.add(group.folder);
@@ -550,41 +1011,44 @@ public final class AutoFolderController {
             newOrder.add(item);
         }
 
-        updateTopLevelRanks(newOrder);
+        // Only top-level items whose position actually changes are rewritten. Apps that move into a
+        // folder are written with that folder, and new folders are inserted at their final position.
+        IdentityHashMap<Object, Long> previousPositions = new IdentityHashMap<>();
+        for (Object item : ownOrderApps) previousPositions.put(item, topLevelPosition(f, item));
+        updateTopLevelRanks(f, newOrder);
+        ArrayList<Object> moved = new ArrayList<>();
+        for (Object item : newOrder) {
+            Long previous = previousPositions.get(item);
+            if (previous != null && previous != topLevelPosition(f, item)) moved.add(item);
+        }
         ownOrderApps.clear();
         ownOrderApps.addAll(newOrder);
 
         for (ApplyGroup group : applyGroups) {
-            int screenId = intField(group.folder, "screenId", 0);
-            addItemToDatabaseSync.invoke(modelWriter, group.folder, -102, screenId, -1, -1);
-            int folderId = intField(group.folder, "id", -1);
-            for (Object app : group.apps) {
-                moveItemInDatabase.invoke(modelWriter, app, folderId, 0,
-                        intField(app, "cellX", -1), intField(app, "cellY", -1));
-            }
-            updateFolderItems.invoke(group.folder, launcher);
+            writes.insertFolder(group.folder);
+            writes.moveIntoFolder(group.folder);
         }
-
-        moveAllAppsItemsInDatabase.invoke(modelWriter, ownOrderApps);
-        setSortMode.invoke(appsView, enumValue(sortModeClass, "OWN_ORDER"));
+        writes.moveTopLevel(moved);
+        setSortMode.invoke(appsView, f.sortOwnOrder);
         updateAdapterItems.invoke(personalAppList, true);
 
         return new ApplyResult(applyGroups.size(), appCount);
     }
 
-    private CurrentApps collectCurrentApps(
-            ArrayList<Object> ownOrderApps,
-            Class<?> appInfoClass,
-            Class<?> folderInfoClass
-    ) {
+    private static long topLevelPosition(LauncherBindings.Folders f, Object item) {
+        return ((long) f.rank(item) << 32) | (f.screenId(item) & 0xFFFFFFFFL);
+    }
+
+    private CurrentApps collectCurrentApps(LauncherBindings b, ArrayList<Object> ownOrderApps) {
+        LauncherBindings.Folders f = b.folders();
         CurrentApps current = new CurrentApps();
         for (int i = 0; i < ownOrderApps.size(); i++) {
             Object item = ownOrderApps.get(i);
-            if (folderInfoClass.isInstance(item)) {
-                String label = titleOf(item);
+            if (f.isFolder(item)) {
+                String label = titleOf(b, item);
                 if (!TextUtils.isEmpty(label)) current.existingLabels.add(label);
-            } else if (appInfoClass.isInstance(item)) {
-                String key = componentKey(item);
+            } else if (b.isApp(item)) {
+                String key = componentKey(b, item);
                 if (!TextUtils.isEmpty(key) && !current.looseAppsByKey.containsKey(key)) {
                     current.looseAppsByKey.put(key, item);
                     current.indexByKey.put(key, i);
@@ -595,12 +1059,11 @@ public final class AutoFolderController {
     }
 
     private ArrayList<ApplyGroup> buildApplyGroups(
+            LauncherBindings b,
             List<Group> semanticGroups,
-            CurrentApps current,
-            Class<?> folderInfoClass,
-            Method addToFolder,
-            Method setFolderTitle
+            CurrentApps current
     ) throws Exception {
+        LauncherBindings.Folders f = b.folders();
         ArrayList<ApplyGroup> groups = new ArrayList<>();
         Set<String> claimedKeys = new HashSet<>();
 
@@ -621,27 +1084,18 @@ public final class AutoFolderController {
             if (apps.size() < 2) continue;
 
             String label = uniqueLabel(semanticGroup.label, current.existingLabels);
-            Object folder = newFolder(folderInfoClass, label, setFolderTitle);
+            Object folder = f.newFolder(label);
             for (Object app : apps) {
-                addToFolder.invoke(folder, app);
-                claimedKeys.add(componentKey(app));
+                f.add(folder, app);
+                claimedKeys.add(componentKey(b, app));
             }
             groups.add(new ApplyGroup(label, folder, apps, firstIndex));
         }
 
-        groups.sort((a, b) -> Integer.compare(a.firstIndex, b.firstIndex));
+        groups.sort((a, c) -> Integer.compare(a.firstIndex, c.firstIndex));
         return groups;
     }
 
-    private Object newFolder(Class<?> folderInfoClass, String label, Method setFolderTitle)
-            throws Exception {
-        Constructor<?> constructor = folderInfoClass.getDeclaredConstructor();
-        constructor.setAccessible(true);
-        Object folder = constructor.newInstance();
-        setFolderTitle.invoke(folder, label, null);
-        return folder;
-    }
-
     private String uniqueLabel(String base, Set<String> usedLabels) {
         String label = TextUtils.isEmpty(base) ? "AI" : base;
         if (usedLabels.add(label)) return label;
@@ -657,11 +1111,9 @@ public final class AutoFolderController {
         }
     }
 
-    private void updateTopLevelRanks(ArrayList<Object> items) throws Exception {
+    private void updateTopLevelRanks(LauncherBindings.Folders f, ArrayList<Object> items) throws Exception {
         for (int i = 0; i < items.size(); i++) {
-            Object item = items.get(i);
-            setIntField(item, "rank", i);
-            setIntField(item, "screenId", i);
+            f.setPosition(items.get(i), i, i);
         }
     }
 
@@ -678,6 +1130,36 @@ public final class AutoFolderController {
         invokeNoThrow(appsView, "hideKeyboard");
     }
 
+    private static SharedPreferences autoFolderPrefs(Context context) {
+        return context.getSharedPreferences(AUTO_FOLDER_PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static long timeLimitMillis(Context context) {
+        int seconds = autoFolderPrefs(context).getInt(PREF_TIME_LIMIT_SECONDS, DEFAULT_TIME_LIMIT_SECONDS);
+        return seconds * 1000L;
+    }
+
+    private static EditText timeLimitInput(Context context, Context prefsContext) {
+        EditText input = new EditText(context);
+        input.setSingleLine(true);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        input.setText(String.valueOf(autoFolderPrefs(prefsContext)
+                .getInt(PREF_TIME_LIMIT_SECONDS, DEFAULT_TIME_LIMIT_SECONDS)));
+        return input;
+    }
+
+    // Blank or zero means no limit.
+    private static void saveTimeLimit(Context context, EditText input) {
+        int seconds;
+        try {
+            String value = input.getText().toString().trim();
+            seconds = TextUtils.isEmpty(value) ? 0 : Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        autoFolderPrefs(context).edit().putInt(PREF_TIME_LIMIT_SECONDS, seconds).apply();
+    }
+
     private static SharedPreferences openRouterPrefs(Context context) {
         return context.getSharedPreferences(OPENROUTER_PREFS, Context.MODE_PRIVATE);
     }
@@ -834,9 +1316,8 @@ public final class AutoFolderController {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private static Object enumValue(Class<?> enumClass, String name) {
-        return Enum.valueOf((Class<Enum>) enumClass.asSubclass(Enum.class), name);
+    private static LauncherBindings bindings(Object appsView) {
+        return LauncherBindings.of(appsView.getClass().getClassLoader());
     }
 
     private static ArrayList<?> ownOrderApps(Object personalAppList) throws Exception {
@@ -848,55 +1329,29 @@ public final class AutoFolderController {
         return (ArrayList<?>) value;
     }
 
-    private static String titleOf(Object item) {
-        try {
-            Object title = findFieldInHierarchy(item.getClass(), "title").get(item);
-            return title == null ? "" : String.valueOf(title).trim();
-        } catch (Throwable ignored) {
-            return "";
-        }
+    private static AppCandidate candidate(LauncherBindings b, Object item, String key, int index) {
+        return new AppCandidate(item, key, titleOf(b, item), packageNameOf(b, item), index);
     }
 
-    private static String packageNameOf(Object item) {
-        Object component = targetComponent(item);
-        if (component instanceof ComponentName) {
-            return ((ComponentName) component).getPackageName();
-        }
-        return "";
+    private static String titleOf(LauncherBindings b, Object item) {
+        return b.title(item).trim();
     }
 
-    private static String componentKey(Object item) {
-        Object component = targetComponent(item);
-        if (component instanceof ComponentName) {
-            return ((ComponentName) component).flattenToString();
-        }
-        return component == null ? "" : String.valueOf(component);
+    private static String packageNameOf(LauncherBindings b, Object item) {
+        ComponentName component = b.targetComponent(item);
+        return component == null ? "" : component.getPackageName();
     }
 
-    private static Object targetComponent(Object item) {
-        try {
-            Method method = findMethod(item.getClass(), "getTargetComponent");
-            Object component = method.invoke(item);
-            if (component != null) return component;
-        } catch (Throwable ignored) {
-        }
-        try {
-            return findFieldInHierarchy(item.getClass(), "componentName").get(item);
-        } catch (Throwable ignored) {
-            return null;
-        }
+    private static String componentKey(LauncherBindings b, Object item) {
+        ComponentName component = b.targetComponent(item);
+        return component == null ? "" : component.flattenToString();
     }
 
-    private static int intField(Object target, String fieldName, int fallback) {
-        try {
-            return findFieldInHierarchy(target.getClass(), fieldName).getInt(target);
-        } catch (Throwable ignored) {
-            return fallback;
+    private static int indexOfIdentity(List<?> items, Object target) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == target) return i;
         }
-    }
-
-    private static void setIntField(Object target, String fieldName, int value) throws Exception {
-        findFieldInHierarchy(target.getClass(), fieldName).setInt(target, value);
+        return -1;
     }
 
     private static Object invokeRequired(Object target, String methodName) throws Exception {
@@ -940,32 +1395,97 @@ public final class AutoFolderController {
 
     private static Method findMethod(Class<?> startClass, String name, Class<?>... params)
             throws NoSuchMethodException {
-        Class<?> c = startClass;
-        while (c != null) {
-            try {
-                Method method = c.getDeclaredMethod(name, params);
-                method.setAccessible(true);
-                return method;
-            } catch (NoSuchMethodException ignored) {
-                c = c.getSuperclass();
-            }
-        }
-        throw new NoSuchMethodException(name);
+        return ReflectionUtils.cachedMethod(startClass, name, params);
     }
 
     private static Field findFieldInHierarchy(Class<?> startClass, String fieldName)
             throws NoSuchFieldException {
-        Class<?> c = startClass;
-        while (c != null) {
+        return ReflectionUtils.cachedField(startClass, fieldName);
+    }
+
+    private interface JobTask {
+        List<Group> run(AutoFolderJob job) throws Exception;
+    }
+
+    // Determinate progress for a running job. It starts indeterminate until the first report.
+    private static final class JobProgress implements AutoFolderJob.Listener {
+        private final Activity activity;
+        private final LinearLayout content;
+        private final ProgressBar bar;
+        private AlertDialog dialog;
+
+        JobProgress(Activity activity, String message) {
+            this.activity = activity;
+            int padding = dp(activity, 20);
+            content = new LinearLayout(activity);
+            content.setOrientation(LinearLayout.VERTICAL);
+            content.setPadding(padding, padding / 2, padding, 0);
+            addDialogText(content, activity, message);
+            bar = new ProgressBar(activity, null, android.R.attr.progressBarStyleHorizontal);
+            bar.setIndeterminate(true);
+            content.addView(bar, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT,
+                    LinearLayout.LayoutParams.WRAP_CONTENT));
+        }
+
+        void show(String title, Runnable onCancel) {
+            dialog = new AlertDialog.Builder(activity)
+                    .setTitle(title)
+                    .setView(content)
+                    .setNegativeButton(android.R.string.cancel, (d, which) -> onCancel.run())
+                    .setOnCancelListener(d -> onCancel.run())
+                    .create();
+            dialog.show();
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            if (total <= 0) return;
+            bar.setIndeterminate(false);
+            bar.setMax(total);
+            bar.setProgress(Math.min(done, total));
+        }
+
+        void dismiss() {
             try {
-                Field field = c.getDeclaredField(fieldName);
-                field.setAccessible(true);
-                return field;
-            } catch (NoSuchFieldException ignored) {
-                c = c.getSuperclass();
+                if (dialog != null) dialog.dismiss();
+            } catch (Throwable ignored) {
             }
         }
-        throw new NoSuchFieldException(fieldName);
+    }
+
+    // ModelWriter calls that persist auto folders. Each queues its rows on the launcher's model
+    // thread, so nothing here waits on the database. A folder's members and the repositioned
+    // top-level items are each written as one batch instead of one update per item.
+    private static final class ModelWrites {
+        private static final int CONTAINER_ALL_APPS = -102;
+
+        final LauncherBindings.Folders folders;
+        final Object launcher;
+        final Object modelWriter;
+
+        ModelWrites(LauncherBindings.Folders folders, Object launcher) throws Exception {
+            this.folders = folders;
+            this.launcher = launcher;
+            this.modelWriter = folders.modelWriter(launcher);
+        }
+
+        // The async insert assigns the id on this thread and queues the row; the sync insert is
+        // only used where the async one does not exist.
+        void insertFolder(Object folder) throws Exception {
+            folders.addItemToDatabase(modelWriter, folder, CONTAINER_ALL_APPS, folders.screenId(folder), -1, -1);
+            if (folders.id(folder) < 0) throw new IllegalStateException("Folder id was not assigned");
+        }
+
+        // FolderInfo.updateItemLocationsInDatabaseBatch writes every member's container, rank and
+        // cell inside the folder in one batch, so the folder order survives a reload.
+        void moveIntoFolder(Object folder) throws Exception {
+            folders.updateItemLocations(folder, launcher);
+        }
+
+        void moveTopLevel(ArrayList<Object> items) throws Exception {
+            if (!items.isEmpty()) folders.moveAllAppsItemsInDatabase(modelWriter, items);
+        }
     }
 
     private static final class MenuIds {
@@ -1007,6 +1527,19 @@ public final class AutoFolderController {
         final Set<String> existingLabels = new LinkedHashSet<>();
     }
 
+    private static final class Tray {
+        final Set<String> allKeys = new HashSet<>();
+        final List<AppCandidate> looseApps = new ArrayList<>();
+        final List<TrayFolder> folders = new ArrayList<>();
+    }
+
+    private record TrayFolder(Object folder, int id, String title, List<AppCandidate> members,
+                              long membersHash) {
+    }
+
+    private record Filing(AppCandidate app, TrayFolder folder, float[] vector) {
+    }
+
     private static final class ApplyGroup {
         @SuppressWarnings("unused")
         final String label;
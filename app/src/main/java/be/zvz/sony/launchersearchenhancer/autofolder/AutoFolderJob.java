@@ -0,0 +1,105 @@
+package be.zvz.sony.launchersearchenhancer.autofolder;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import be.zvz.sony.launchersearchenhancer.reranker.SemanticReranker;
+
+// One auto-folder run on the worker thread. The main thread may cancel it at any time; the worker
+// notices at checkpoints between embedding batches and network phases and unwinds with a
+// CancellationException. Past the time budget a run stops gathering and finishes with what it
+// has, flagged partial, so the caller can offer those groups instead of nothing.
+final class AutoFolderJob implements SemanticReranker.BatchGate {
+
+    private static final long POLL_MILLIS = 250L;
+
+    interface Listener {
+        // Main thread.
+        void onProgress(int done, int total);
+    }
+
+    private final Handler mainHandler;
+    private final Listener listener;
+    private final long deadline;
+    private volatile boolean cancelled;
+    private volatile boolean partial;
+    private volatile int analyzed;
+    private volatile int total;
+
+    AutoFolderJob(Handler mainHandler, long budgetMillis, Listener listener) {
+        this.mainHandler = mainHandler;
+        this.listener = listener;
+        this.deadline = budgetMillis <= 0L
+                ? Long.MAX_VALUE
+                : SystemClock.elapsedRealtime() + budgetMillis;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean isPartial() {
+        return partial;
+    }
+
+    // Items that made it through before the budget ran out, of the total reported.
+    int analyzed() {
+        return analyzed;
+    }
+
+    int total() {
+        return total;
+    }
+
+    void checkpoint() {
+        if (cancelled) throw new CancellationException();
+    }
+
+    // checkpoint(), then false once the budget is spent; the run is partial from then on.
+    boolean proceed() {
+        checkpoint();
+        if (SystemClock.elapsedRealtime() < deadline) return true;
+        partial = true;
+        return false;
+    }
+
+    @Override
+    public boolean next(int done, int total) {
+        progress(done, total);
+        return proceed();
+    }
+
+    void progress(int done, int total) {
+        analyzed = done;
+        this.total = total;
+        if (listener == null) return;
+        mainHandler.post(() -> {
+            if (!cancelled) listener.onProgress(done, total);
+        });
+    }
+
+    // Waits up to timeoutMillis, checking for cancellation every POLL_MILLIS; false on a timeout
+    // or once the budget is spent.
+    boolean await(CountDownLatch latch, long timeoutMillis) throws InterruptedException {
+        long end = SystemClock.elapsedRealtime() + timeoutMillis;
+        while (true) {
+            checkpoint();
+            if (latch.getCount() == 0) return true;
+            long now = SystemClock.elapsedRealtime();
+            if (now >= deadline) {
+                partial = true;
+                return false;
+            }
+            if (now >= end) return false;
+            latch.await(Math.min(POLL_MILLIS, Math.min(end, deadline) - now), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package be.zvz.sony.launchersearchenhancer.autofolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Sum of member embeddings per folder id, for filing a newly installed app into the closest
+// folder. Each entry remembers an order-independent hash of the member keys it was built from:
+// a folder whose contents changed elsewhere reads as stale and is rebuilt, while a filing made
+// here just adds the one new vector. Entries are dropped on a model change.
+final class FolderCentroids {
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private String model;
+
+    record Match(int folderId, float similarity, float secondSimilarity) {
+    }
+
+    private static final class Entry {
+        long membersHash;
+        final float[] sum;
+
+        Entry(long membersHash, float[] sum) {
+            this.membersHash = membersHash;
+            this.sum = sum;
+        }
+    }
+
+    static long keyHash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        return h;
+    }
+
+    // Drops entries from another model and for folders that no longer exist.
+    synchronized void retain(String model, Set<Integer> folderIds) {
+        if (model == null ? this.model != null : !model.equals(this.model)) {
+            entries.clear();
+            this.model = model;
+        }
+        entries.keySet().retainAll(folderIds);
+    }
+
+    synchronized boolean isCurrent(int folderId, long membersHash) {
+        Entry e = entries.get(folderId);
+        return e != null && e.membersHash == membersHash;
+    }
+
+    // Rebuilds an entry from member vectors; null rows (failed inferences) are skipped.
+    synchronized void put(int folderId, long membersHash, float[][] vectors) {
+        float[] sum = null;
+        for (float[] v : vectors) {
+            if (v == null) continue;
+            if (sum == null) sum = new float[v.length];
+            if (v.length != sum.length) continue;
+            for (int k = 0; k < v.length; k++) sum[k] += v[k];
+        }
+        if (sum == null) {
+            entries.remove(folderId);
+            return;
+        }
+        entries.put(folderId, new Entry(membersHash, sum));
+    }
+
+    synchronized void add(int folderId, String key, float[] vector) {
+        Entry e = entries.get(folderId);
+        if (e == null || vector == null || vector.length != e.sum.length) {
+            entries.remove(folderId);
+            return;
+        }
+        for (int k = 0; k < vector.length; k++) e.sum[k] += vector[k];
+        e.membersHash += keyHash(key);
+    }
+
+    // Closest folder by cosine to its normalized centroid, with the runner-up for a margin check.
+    synchronized Match nearest(float[] vector) {
+        if (vector == null) return null;
+        int best = -1;
+        float bestSimilarity = Float.NEGATIVE_INFINITY;
+        float second = Float.NEGATIVE_INFINITY;
+        for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+            float[] sum = entry.getValue().sum;
+            if (sum.length != vector.length) continue;
+            float dot = 0f;
+            float norm = 0f;
+            for (int k = 0; k < sum.length; k++) {
+                dot += sum[k] * vector[k];
+                norm += sum[k] * sum[k];
+            }
+            if (norm <= 0f) continue;
+            float similarity = dot / (float) Math.sqrt(norm);
+            if (similarity > bestSimilarity) {
+                second = bestSimilarity;
+                bestSimilarity = similarity;
+                best = entry.getKey();
+            } else if (similarity > second) {
+                second = similarity;
+            }
+        }
+        return best < 0 ? null : new Match(best, bestSimilarity, second);
+    }
+}
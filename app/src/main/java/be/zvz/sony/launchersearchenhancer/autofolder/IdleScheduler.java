@@ -0,0 +1,73 @@
+package be.zvz.sony.launchersearchenhancer.autofolder;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.PowerManager;
+
+// Starts background work once the device has been charging with the screen off for SETTLE_MILLIS,
+// and stops it as soon as either changes. Driven by the screen and charging broadcasts registered
+// in the launcher process; all callbacks run on the handler's thread. isCharging() only turns true
+// some time after the charger is connected, which ACTION_CHARGING announces, so that broadcast is
+// the one that starts the wait when the screen is already off.
+final class IdleScheduler {
+
+    private static final long SETTLE_MILLIS = 2 * 60 * 1000L;
+
+    private final Context context;
+    private final Handler handler;
+    private final Runnable start;
+    private final Runnable stop;
+    private boolean idle;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context c, Intent intent) {
+            update();
+        }
+    };
+
+    IdleScheduler(Context context, Handler handler, Runnable start, Runnable stop) {
+        this.context = context;
+        this.handler = handler;
+        this.start = start;
+        this.stop = stop;
+    }
+
+    void register() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        filter.addAction(BatteryManager.ACTION_CHARGING);
+        filter.addAction(BatteryManager.ACTION_DISCHARGING);
+        context.registerReceiver(receiver, filter, null, handler);
+        update();
+    }
+
+    private void update() {
+        boolean nowIdle = isIdle();
+        if (nowIdle == idle) return;
+        idle = nowIdle;
+        if (nowIdle) {
+            handler.postDelayed(start, SETTLE_MILLIS);
+        } else {
+            handler.removeCallbacks(start);
+            stop.run();
+        }
+    }
+
+    private boolean isIdle() {
+        try {
+            PowerManager power = context.getSystemService(PowerManager.class);
+            BatteryManager battery = context.getSystemService(BatteryManager.class);
+            return power != null && battery != null && !power.isInteractive() && battery.isCharging();
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
+}
@@ -46,25 +46,47 @@ public final class OpenRouterAppGrouper {
 
     public List<Group> group(Context context, List<AppCandidate> apps, Config config)
             throws Exception {
+        return group(context, apps, config, new AutoFolderJob(null, 0L, null));
+    }
+
+    // Progress counts phases: the request, then parsing, plus a repair request when parsing fails.
+    // A run that reaches the job's budget before a usable reply has no partial groups, so it
+    // returns none and leaves the job flagged partial.
+    List<Group> group(Context context, List<AppCandidate> apps, Config config, AutoFolderJob job)
+            throws Exception {
         if (context == null || apps == null || apps.size() < 2 || config == null) {
             return Collections.emptyList();
         }
 
-        String responseBody = requestWithJsonModeFallback(
-                context,
-                config.apiKey,
-                buildGroupingRequest(apps, config, true),
-                buildGroupingRequest(apps, config, false));
-        String content = completionContent(responseBody);
         try {
-            return parseGroups(content, apps);
-        } catch (IOException | JSONException parseError) {
-            String repairedResponse = requestWithJsonModeFallback(
+            job.progress(0, 2);
+            String responseBody = requestWithJsonModeFallback(
                     context,
                     config.apiKey,
-                    buildRepairRequest(config, content, parseError, true),
-                    buildRepairRequest(config, content, parseError, false));
-            return parseGroups(completionContent(repairedResponse), apps);
+                    buildGroupingRequest(apps, config, true),
+                    buildGroupingRequest(apps, config, false),
+                    job);
+            job.progress(1, 2);
+            String content = completionContent(responseBody);
+            try {
+                List<Group> groups = parseGroups(content, apps);
+                job.progress(2, 2);
+                return groups;
+            } catch (IOException | JSONException parseError) {
+                job.progress(2, 3);
+                String repairedResponse = requestWithJsonModeFallback(
+                        context,
+                        config.apiKey,
+                        buildRepairRequest(config, content, parseError, true),
+                        buildRepairRequest(config, content, parseError, false),
+                        job);
+                List<Group> groups = parseGroups(completionContent(repairedResponse), apps);
+                job.progress(3, 3);
+                return groups;
+            }
+        } catch (IOException e) {
+            if (job.isPartial()) return Collections.emptyList();
+            throw e;
         }
     }
 
@@ -173,18 +195,20 @@ public final class OpenRouterAppGrouper {
             Context context,
             String apiKey,
             JSONObject jsonModeRequest,
-            JSONObject plainRequest
+            JSONObject plainRequest,
+            AutoFolderJob job
     ) throws Exception {
         try {
-            return requestCompletion(context, apiKey, jsonModeRequest.toString());
+            return requestCompletion(context, apiKey, jsonModeRequest.toString(), job);
         } catch (IOException e) {
             if (!isResponseFormatFailure(e)) throw e;
-            return requestCompletion(context, apiKey, plainRequest.toString());
+            return requestCompletion(context, apiKey, plainRequest.toString(), job);
         }
     }
 
-    private String requestCompletion(Context context, String apiKey, String requestBody)
+    private String requestCompletion(Context context, String apiKey, String requestBody, AutoFolderJob job)
             throws Exception {
+        if (!job.proceed()) throw new IOException("Auto folder time limit reached.");
         CountDownLatch latch = new CountDownLatch(1);
         AtomicBoolean bound = new AtomicBoolean(false);
         AtomicReference<String> responseRef = new AtomicReference<>();
@@ -241,8 +265,10 @@ public final class OpenRouterAppGrouper {
         bound.set(true);
 
         try {
-            if (!latch.await(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
-                throw new IOException("OpenRouter request timed out.");
+            if (!job.await(latch, TimeUnit.SECONDS.toMillis(REQUEST_TIMEOUT_SECONDS))) {
+                throw new IOException(job.isPartial()
+                        ? "Auto folder time limit reached."
+                        : "OpenRouter request timed out.");
             }
             Throwable error = errorRef.get();
             if (error instanceof Exception exception) throw exception;
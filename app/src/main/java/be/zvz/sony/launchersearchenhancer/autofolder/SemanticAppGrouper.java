@@ -4,13 +4,15 @@ import android.content.Context;
 import android.text.TextUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import be.zvz.sony.launchersearchenhancer.R;
 import be.zvz.sony.launchersearchenhancer.reranker.SemanticReranker;
@@ -39,8 +41,11 @@ public final class SemanticAppGrouper {
             new Category(R.string.auto_folder_category_news, "News", "news reading articles magazine newspaper rss books comics kindle reddit feed")
     };
 
+    private static final Pattern PROMPT_SPLIT = Pattern.compile("\\s+");
+    private static final String CATEGORY_SET = "categories";
+    private static final List<String> CATEGORY_PROMPTS = categoryPrompts();
+
     private final SemanticReranker reranker;
-    private final ConcurrentHashMap<String, float[]> categoryVectors = new ConcurrentHashMap<>();
 
     public SemanticAppGrouper(SemanticReranker reranker) {
         this.reranker = reranker;
@@ -51,38 +56,60 @@ public final class SemanticAppGrouper {
     }
 
     public List<Group> group(Context context, List<AppCandidate> apps, Context labelContext) throws Exception {
+        return group(context, apps, labelContext, null);
+    }
+
+    // With a job, apps left unembedded when its budget runs out are simply not grouped.
+    List<Group> group(Context context, List<AppCandidate> apps, Context labelContext, AutoFolderJob job)
+            throws Exception {
+        if (context == null || apps == null || apps.size() < 2) return Collections.emptyList();
+        return group(embed(context, apps, job), apps, labelContext);
+    }
+
+    // Groups from app vectors computed earlier, one per app and null where missing; only the
+    // category vectors are fetched.
+    List<Group> group(Context context, List<AppCandidate> apps, float[][] appVectors, Context labelContext,
+                      boolean clusters) throws Exception {
         if (context == null || apps == null || apps.size() < 2) return Collections.emptyList();
+        float[][] vectors = reranker.embedForTexts(context, CATEGORY_SET, CATEGORY_PROMPTS,
+                Collections.emptyList());
+        vectors = Arrays.copyOf(vectors, CATEGORIES.length + apps.size());
+        System.arraycopy(appVectors, 0, vectors, CATEGORIES.length, apps.size());
+        int[] appRows = new int[apps.size()];
+        for (int i = 0; i < appRows.length; i++) appRows[i] = i;
+        Embedded embedded = new Embedded(vectors, appRows, apps.size());
+        return clusters ? cluster(embedded, apps, labelContext) : group(embedded, apps, labelContext);
+    }
+
+    private static List<Group> group(Embedded embedded, List<AppCandidate> apps, Context labelContext) {
+        int categories = CATEGORIES.length;
+        int[] appRows = embedded.appRows();
+        float[] scores = scoreMatrix(embedded.vectors(), categories, embedded.rows());
+        if (scores == null) return Collections.emptyList();
 
         Map<Category, ArrayList<AppCandidate>> buckets = new LinkedHashMap<>();
-        for (Category category : CATEGORIES) {
-            buckets.put(category, new ArrayList<>());
-            categoryVector(context, category);
-        }
+        for (Category category : CATEGORIES) buckets.put(category, new ArrayList<>());
 
-        for (AppCandidate app : apps) {
-            float[] appVector = reranker.embedForText(context, app.embeddingText());
-            if (appVector == null) continue;
+        for (int i = 0; i < apps.size(); i++) {
+            int base = appRows[i] * categories;
+            if (Float.isNaN(scores[base])) continue;
 
-            Category best = null;
+            int best = -1;
             float bestScore = -1f;
             float secondScore = -1f;
-
-            for (Category category : CATEGORIES) {
-                float[] categoryVector = categoryVector(context, category);
-                if (categoryVector == null) continue;
-
-                float score = SemanticReranker.cosineSimilarity(appVector, categoryVector);
+            for (int c = 0; c < categories; c++) {
+                float score = scores[base + c];
                 if (score > bestScore) {
                     secondScore = bestScore;
                     bestScore = score;
-                    best = category;
+                    best = c;
                 } else if (score > secondScore) {
                     secondScore = score;
                 }
             }
 
-            if (best != null && bestScore >= MIN_SIMILARITY && bestScore - secondScore >= MIN_MARGIN) {
-                buckets.get(best).add(app);
+            if (best >= 0 && bestScore >= MIN_SIMILARITY && bestScore - secondScore >= MIN_MARGIN) {
+                buckets.get(CATEGORIES[best]).add(apps.get(i));
             }
         }
 
@@ -97,15 +124,205 @@ public final class SemanticAppGrouper {
         return groups;
     }
 
-    private float[] categoryVector(Context context, Category category) throws Exception {
-        float[] cached = categoryVectors.get(category.prompt);
-        if (cached != null) return cached;
+    // Folders found from the apps themselves rather than the fixed categories, so a user's own
+    // workflow apps can form a folder. Each cluster is labelled with its closest category when that
+    // clears MIN_SIMILARITY, otherwise with the title of its most central app.
+    public List<Group> cluster(Context context, List<AppCandidate> apps, Context labelContext) throws Exception {
+        return cluster(context, apps, labelContext, null);
+    }
+
+    List<Group> cluster(Context context, List<AppCandidate> apps, Context labelContext, AutoFolderJob job)
+            throws Exception {
+        if (context == null || apps == null || apps.size() < 2) return Collections.emptyList();
+        return cluster(embed(context, apps, job), apps, labelContext);
+    }
+
+    private static List<Group> cluster(Embedded embedded, List<AppCandidate> apps, Context labelContext) {
+        int categories = CATEGORIES.length;
+        float[][] vectors = embedded.vectors();
+        int[] clusterOfRow = AppClusterer.cluster(vectors, categories, embedded.rows());
+
+        LinkedHashMap<Integer, ArrayList<Integer>> members = new LinkedHashMap<>();
+        for (int i = 0; i < apps.size(); i++) {
+            int cluster = clusterOfRow[embedded.appRows()[i]];
+            if (cluster < 0) continue;
+            members.computeIfAbsent(cluster, k -> new ArrayList<>()).add(i);
+        }
+
+        ArrayList<Group> groups = new ArrayList<>();
+        for (ArrayList<Integer> indices : members.values()) {
+            if (indices.size() < 2) continue;
+            ArrayList<AppCandidate> groupedApps = new ArrayList<>(indices.size());
+            for (int i : indices) groupedApps.add(apps.get(i));
+            groups.add(new Group(clusterLabel(vectors, embedded.appRows(), indices, apps, labelContext), groupedApps));
+        }
+        groups.sort(Comparator.comparingInt(Group::firstIndex));
+        return groups;
+    }
+
+    // One vector per app, null where inference failed; rows come from the same model as the
+    // category vectors, so they can be compared with vectors from group and cluster.
+    public float[][] embedApps(Context context, List<AppCandidate> apps) throws Exception {
+        return embedApps(context, apps, null);
+    }
+
+    float[][] embedApps(Context context, List<AppCandidate> apps, AutoFolderJob job) throws Exception {
+        float[][] out = new float[apps.size()][];
+        if (context == null || apps.isEmpty()) return out;
+        Embedded embedded = embed(context, apps, job);
+        for (int i = 0; i < out.length; i++) {
+            out[i] = embedded.vectors()[CATEGORIES.length + embedded.appRows()[i]];
+        }
+        return out;
+    }
+
+    private static String clusterLabel(
+            float[][] vectors,
+            int[] appRows,
+            List<Integer> indices,
+            List<AppCandidate> apps,
+            Context labelContext
+    ) {
+        int categories = CATEGORIES.length;
+        float[] centroid = null;
+        for (int i : indices) {
+            float[] v = vectors[categories + appRows[i]];
+            if (centroid == null) centroid = new float[v.length];
+            for (int k = 0; k < v.length; k++) centroid[k] += v[k];
+        }
+        float norm = 0f;
+        for (float x : centroid) norm += x * x;
+        norm = (float) Math.sqrt(norm);
+        if (norm > 0f) {
+            for (int k = 0; k < centroid.length; k++) centroid[k] /= norm;
+        }
+
+        int best = -1;
+        float bestScore = MIN_SIMILARITY;
+        for (int c = 0; c < categories; c++) {
+            float score = dot(vectors[c], centroid);
+            if (score >= bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        if (best >= 0) return CATEGORIES[best].label(labelContext);
+
+        AppCandidate central = null;
+        float centralScore = Float.NEGATIVE_INFINITY;
+        for (int i : indices) {
+            AppCandidate app = apps.get(i);
+            if (TextUtils.isEmpty(app.title)) continue;
+            float score = dot(vectors[categories + appRows[i]], centroid);
+            if (score > centralScore) {
+                centralScore = score;
+                central = app;
+            }
+        }
+        return central == null ? "" : central.title;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        if (a == null || b == null || a.length != b.length) return Float.NEGATIVE_INFINITY;
+        float dot = 0f;
+        for (int k = 0; k < a.length; k++) dot += a[k] * b[k];
+        return dot;
+    }
+
+    // Category vectors first, then one row per distinct embedding text; apps with the same title
+    // and package embed once. One call, so category and app vectors always come from the same
+    // model. Category vectors are a persisted set: inferred once per model, then read back from
+    // one file. A job is asked before each batch and then told how many apps got a vector.
+    private Embedded embed(Context context, List<AppCandidate> apps, AutoFolderJob job) throws Exception {
+        LinkedHashMap<String, Integer> textRows = new LinkedHashMap<>();
+        int[] appRows = new int[apps.size()];
+        for (int i = 0; i < apps.size(); i++) {
+            Integer row = textRows.get(apps.get(i).embeddingText());
+            if (row == null) {
+                row = textRows.size();
+                textRows.put(apps.get(i).embeddingText(), row);
+            }
+            appRows[i] = row;
+        }
+        float[][] vectors = reranker.embedForTexts(context, CATEGORY_SET, CATEGORY_PROMPTS,
+                new ArrayList<>(textRows.keySet()), job);
+        if (job != null) {
+            job.checkpoint();
+            int embedded = 0;
+            for (int row : appRows) {
+                if (vectors[CATEGORIES.length + row] != null) embedded++;
+            }
+            job.progress(embedded, apps.size());
+        }
+        return new Embedded(vectors, appRows, textRows.size());
+    }
+
+    private record Embedded(float[][] vectors, int[] appRows, int rows) {
+    }
+
+    private static List<String> categoryPrompts() {
+        ArrayList<String> prompts = new ArrayList<>(CATEGORIES.length);
+        for (Category category : CATEGORIES) prompts.add(category.prompt);
+        return Collections.unmodifiableList(prompts);
+    }
+
+    // Category names and prompt words: common query terms worth distilling into synonyms.
+    public static List<String> vocabulary() {
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        for (Category category : CATEGORIES) {
+            terms.add(category.fallbackLabel.toLowerCase(Locale.ROOT));
+            Collections.addAll(terms, PROMPT_SPLIT.split(category.prompt));
+        }
+        return new ArrayList<>(terms);
+    }
+
+    // Row-major [text row][category] similarities: the app matrix (rows x dim) times the transposed
+    // category matrix (categories x dim), both packed flat. Vectors are unit length, so the dot
+    // product is the cosine. A category without a vector scores -inf; an app row without one is
+    // NaN. Null when no category could be embedded.
+    private static float[] scoreMatrix(float[][] vectors, int categories, int rows) {
+        int dim = 0;
+        for (int c = 0; c < categories && dim == 0; c++) {
+            if (vectors[c] != null) dim = vectors[c].length;
+        }
+        if (dim == 0) return null;
+
+        float[] categoryMatrix = new float[categories * dim];
+        boolean[] categoryPresent = new boolean[categories];
+        for (int c = 0; c < categories; c++) {
+            if (vectors[c] == null || vectors[c].length != dim) continue;
+            System.arraycopy(vectors[c], 0, categoryMatrix, c * dim, dim);
+            categoryPresent[c] = true;
+        }
+        float[] appMatrix = new float[rows * dim];
+        boolean[] appPresent = new boolean[rows];
+        for (int r = 0; r < rows; r++) {
+            float[] v = vectors[categories + r];
+            if (v == null || v.length != dim) continue;
+            System.arraycopy(v, 0, appMatrix, r * dim, dim);
+            appPresent[r] = true;
+        }
 
-        float[] vector = reranker.embedForText(context, category.prompt);
-        if (vector != null) {
-            categoryVectors.put(category.prompt, vector);
+        float[] scores = new float[rows * categories];
+        for (int r = 0; r < rows; r++) {
+            int out = r * categories;
+            if (!appPresent[r]) {
+                Arrays.fill(scores, out, out + categories, Float.NaN);
+                continue;
+            }
+            int a = r * dim;
+            for (int c = 0; c < categories; c++) {
+                if (!categoryPresent[c]) {
+                    scores[out + c] = Float.NEGATIVE_INFINITY;
+                    continue;
+                }
+                int b = c * dim;
+                float dot = 0f;
+                for (int k = 0; k < dim; k++) dot += appMatrix[a + k] * categoryMatrix[b + k];
+                scores[out + c] = dot;
+            }
         }
-        return vector;
+        return scores;
     }
 
     private record Category(int labelResId, String fallbackLabel, String prompt) {
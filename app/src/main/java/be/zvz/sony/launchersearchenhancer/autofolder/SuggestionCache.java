@@ -0,0 +1,81 @@
+package be.zvz.sony.launchersearchenhancer.autofolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import be.zvz.sony.launchersearchenhancer.autofolder.SemanticAppGrouper.AppCandidate;
+import be.zvz.sony.launchersearchenhancer.autofolder.SemanticAppGrouper.Group;
+
+// Auto-folder suggestions and the app vectors behind them, kept for the launcher process. Groups
+// are stored per mode under an order-independent hash of the loose app set, so an unchanged tray
+// gets them back without running the model; app vectors are kept by key and title, so a changed
+// tray only embeds the apps that are new. Everything is dropped on a model change.
+final class SuggestionCache {
+
+    private final Map<String, float[]> vectors = new HashMap<>();
+    private final Map<Boolean, Suggestions> suggestions = new HashMap<>();
+    private String model;
+
+    private record Suggestions(long appSetHash, List<Group> groups) {
+    }
+
+    static long appSetHash(List<AppCandidate> apps) {
+        long hash = 0L;
+        for (AppCandidate app : apps) hash += FolderCentroids.keyHash(identity(app));
+        return hash;
+    }
+
+    // The title is part of an app's identity: it is half of the embedded text.
+    private static String identity(AppCandidate app) {
+        return app.key + '\n' + app.title;
+    }
+
+    synchronized List<Group> groups(String model, long appSetHash, boolean clusters) {
+        if (!isModel(model)) return null;
+        Suggestions s = suggestions.get(clusters);
+        return s != null && s.appSetHash() == appSetHash ? s.groups() : null;
+    }
+
+    synchronized void putGroups(String model, long appSetHash, boolean clusters, List<Group> groups) {
+        retain(model);
+        suggestions.put(clusters, new Suggestions(appSetHash, groups));
+    }
+
+    // Fills cached rows into out and returns the indices of apps still without a vector.
+    synchronized List<Integer> vectors(String model, List<AppCandidate> apps, float[][] out) {
+        retain(model);
+        ArrayList<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < apps.size(); i++) {
+            out[i] = vectors.get(identity(apps.get(i)));
+            if (out[i] == null) missing.add(i);
+        }
+        return missing;
+    }
+
+    // Keeps vectors for the given apps only, so the cache tracks the tray rather than growing.
+    synchronized void putVectors(String model, List<AppCandidate> apps, float[][] rows) {
+        retain(model);
+        Set<String> current = new HashSet<>();
+        for (int i = 0; i < apps.size(); i++) {
+            String identity = identity(apps.get(i));
+            current.add(identity);
+            if (rows[i] != null) vectors.put(identity, rows[i]);
+        }
+        vectors.keySet().retainAll(current);
+    }
+
+    private boolean isModel(String model) {
+        return model == null ? this.model == null : model.equals(this.model);
+    }
+
+    private void retain(String model) {
+        if (isModel(model)) return;
+        vectors.clear();
+        suggestions.clear();
+        this.model = model;
+    }
+}
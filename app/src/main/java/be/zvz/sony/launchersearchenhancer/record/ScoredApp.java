@@ -1,8 +1,18 @@
 package be.zvz.sony.launchersearchenhancer.record;
 
+import java.util.Comparator;
+
 public record ScoredApp(
         Object app, int score, String normTitle, String normPkg,
                         String rawTitle, String rawPkg) {
+    // Higher score first, then title and package for a stable order between equal scores.
+    public static final Comparator<ScoredApp> RANKING = (a, b) -> {
+        int cmp = Integer.compare(b.score(), a.score());
+        if (cmp != 0) return cmp;
+        cmp = a.normTitle().compareTo(b.normTitle());
+        return cmp != 0 ? cmp : a.normPkg().compareTo(b.normPkg());
+    };
+
     public ScoredApp(Object app, int score, String normTitle, String normPkg, String rawTitle, String rawPkg) {
         this.app = app;
         this.score = score;
@@ -0,0 +1,155 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// Read-only char trie laid out breadth-first: the children of node k occupy
+// [first[k], first[k + 1]) and are sorted by label, so lookups walk chars
+// without materializing substrings. Storage is buffer-backed so a compiled
+// trie can be used straight from a memory-mapped file.
+final class CharTrie {
+
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    private final CharBuffer labels;
+    private final IntBuffer first;
+    private final IntBuffer values;
+
+    private CharTrie(CharBuffer labels, IntBuffer first, IntBuffer values) {
+        this.labels = labels;
+        this.first = first;
+        this.values = values;
+    }
+
+    static CharTrie build(String[] keys, int[] values) {
+        int n = keys.length;
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) boxed[i] = i;
+        // Stable sort keeps the later entry last among duplicate keys, matching HashMap.put semantics.
+        Arrays.sort(boxed, (a, b) -> keys[a].compareTo(keys[b]));
+
+        String[] sortedKeys = new String[n];
+        int[] sortedValues = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedKeys[i] = keys[boxed[i]];
+            sortedValues[i] = values[boxed[i]];
+        }
+        return buildSorted(sortedKeys, sortedValues);
+    }
+
+    static CharTrie buildSorted(String[] keys, int[] values) {
+        long totalChars = 1;
+        for (String k : keys) totalChars += k.length();
+        if (totalChars > Integer.MAX_VALUE - 1) throw new IllegalStateException("trie too large");
+        int bound = (int) totalChars;
+
+        char[] label = new char[bound];
+        int[] lo = new int[bound];
+        int[] hi = new int[bound];
+        int[] depth = new int[bound];
+        int[] firstChild = new int[bound + 1];
+        int[] value = new int[bound];
+
+        int count = 1;
+        lo[0] = 0;
+        hi[0] = keys.length;
+
+        for (int node = 0; node < count; node++) {
+            int d = depth[node];
+            int i = lo[node];
+            int end = hi[node];
+            value[node] = NONE;
+
+            while (i < end && keys[i].length() == d) {
+                value[node] = values[i];
+                i++;
+            }
+
+            firstChild[node] = count;
+            while (i < end) {
+                char c = keys[i].charAt(d);
+                int j = i + 1;
+                while (j < end && keys[j].charAt(d) == c) j++;
+                label[count] = c;
+                lo[count] = i;
+                hi[count] = j;
+                depth[count] = d + 1;
+                count++;
+                i = j;
+            }
+        }
+        firstChild[count] = count;
+
+        return new CharTrie(
+                CharBuffer.wrap(Arrays.copyOf(label, count)),
+                IntBuffer.wrap(Arrays.copyOf(firstChild, count + 1)),
+                IntBuffer.wrap(Arrays.copyOf(value, count)));
+    }
+
+    // Layout: nodeCount, labels (padded to 4 bytes), first[nodeCount + 1], values[nodeCount].
+    static CharTrie readFrom(ByteBuffer in) {
+        int count = in.getInt();
+        if (count <= 0) throw new IllegalStateException("corrupt trie");
+        CharBuffer labels = section(in, count * Character.BYTES).asCharBuffer();
+        IntBuffer first = section(in, (count + 1) * Integer.BYTES).asIntBuffer();
+        IntBuffer values = section(in, count * Integer.BYTES).asIntBuffer();
+        return new CharTrie(labels, first, values);
+    }
+
+    int byteSize() {
+        int count = nodeCount();
+        return Integer.BYTES + align4(count * Character.BYTES) + (2 * count + 1) * Integer.BYTES;
+    }
+
+    void writeTo(ByteBuffer out) {
+        int count = nodeCount();
+        out.putInt(count);
+        for (int i = 0; i < count; i++) out.putChar(labels.get(i));
+        if ((count & 1) != 0) out.putChar((char) 0);
+        for (int i = 0; i <= count; i++) out.putInt(first.get(i));
+        for (int i = 0; i < count; i++) out.putInt(values.get(i));
+    }
+
+    static int align4(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    private static ByteBuffer section(ByteBuffer in, int bytes) {
+        ByteBuffer slice = in.slice().order(in.order());
+        slice.limit(bytes);
+        in.position(in.position() + align4(bytes));
+        return slice;
+    }
+
+    int child(int node, char c) {
+        int low = first.get(node);
+        int high = first.get(node + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = labels.get(mid);
+            if (m < c) low = mid + 1;
+            else if (m > c) high = mid - 1;
+            else return mid;
+        }
+        return NONE;
+    }
+
+    int value(int node) {
+        return values.get(node);
+    }
+
+    int get(CharSequence key) {
+        int node = ROOT;
+        for (int i = 0; i < key.length() && node != NONE; i++) {
+            node = child(node, key.charAt(i));
+        }
+        return node == NONE ? NONE : values.get(node);
+    }
+
+    int nodeCount() {
+        return values.limit();
+    }
+}
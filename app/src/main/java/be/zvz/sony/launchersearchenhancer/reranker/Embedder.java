@@ -0,0 +1,40 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.util.List;
+
+// Where vectors come from: an ORT session in this process, or the module's embedding service.
+interface Embedder {
+
+    float[] embed(String text, InferenceScheduler.Priority priority) throws Exception;
+
+    // Rows the backend produced nothing for come back null.
+    float[][] embedBatch(List<String> texts, InferenceScheduler.Priority priority) throws Exception;
+
+    int dimensions();
+
+    void close() throws Exception;
+
+    static Embedder local(OnnxEmbedder onnx) {
+        return new Embedder() {
+            @Override
+            public float[] embed(String text, InferenceScheduler.Priority priority) throws Exception {
+                return onnx.embed(text);
+            }
+
+            @Override
+            public float[][] embedBatch(List<String> texts, InferenceScheduler.Priority priority) throws Exception {
+                return onnx.embedBatch(texts);
+            }
+
+            @Override
+            public int dimensions() {
+                return onnx.dimensions();
+            }
+
+            @Override
+            public void close() throws Exception {
+                onnx.close();
+            }
+        };
+    }
+}
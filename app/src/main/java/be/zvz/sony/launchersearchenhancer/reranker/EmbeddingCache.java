@@ -0,0 +1,210 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Embedding cache keyed by 64-bit hashes of the normalized text. Entries are spread over
+// independently locked segments, each an open-addressed table; when a segment is full a
+// handful of slots is sampled and the least frequently used one is evicted, so a hot
+// search thread and the auto-folder worker never wait on a global lock.
+final class EmbeddingCache {
+
+    private static final int SEGMENTS = 16;
+    private static final int SAMPLE = 8;
+    private static final int MAX_FREQ = 15;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    record Stats(long hits, long misses, long evictions, int size, int capacity) {
+        float hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0f : (float) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "hits=%d misses=%d evictions=%d size=%d/%d hitRate=%.3f",
+                    hits, misses, evictions, size, capacity, hitRate());
+        }
+    }
+
+    EmbeddingCache(int capacity) {
+        int perSegment = Math.max(SAMPLE, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(perSegment);
+    }
+
+    // Same identity as hashing "<namespace>|" + NFKC-lowercased-trimmed text, but ASCII input
+    // (the common case for app titles and package names) is hashed without allocating.
+    static long key(char namespace, String text) {
+        if (text == null) text = "";
+        int start = 0;
+        int end = text.length();
+        boolean ascii = true;
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+        if (!ascii) {
+            text = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT).trim();
+            end = text.length();
+        } else {
+            while (start < end && text.charAt(start) <= ' ') start++;
+            while (end > start && text.charAt(end - 1) <= ' ') end--;
+        }
+
+        long h = 0xCBF29CE484222325L;
+        h = (h ^ namespace) * 0x100000001B3L;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (ascii && c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            h = (h ^ c) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    float[] get(long key) {
+        float[] v = segmentFor(key).get(key);
+        if (v != null) hits.increment();
+        else misses.increment();
+        return v;
+    }
+
+    void put(long key, float[] value) {
+        if (value == null) return;
+        if (segmentFor(key).put(key, value)) evictions.increment();
+    }
+
+    void clear() {
+        for (Segment s : segments) s.clear();
+    }
+
+    Stats stats() {
+        int size = 0;
+        int capacity = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                size += s.size;
+            }
+            capacity += s.maxSize;
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size, capacity);
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (key >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h == 0L ? 1L : h; // 0 marks an empty slot
+    }
+
+    // Linear-probing table with backward-shift deletion; only touched under its own monitor.
+    private static final class Segment {
+        final int maxSize;
+        final int mask;
+        final long[] keys;
+        final float[][] values;
+        final byte[] freq;
+        int size;
+        int hand;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+            int cap = Integer.highestOneBit(maxSize * 2 - 1) << 1;
+            this.mask = cap - 1;
+            this.keys = new long[cap];
+            this.values = new float[cap][];
+            this.freq = new byte[cap];
+        }
+
+        synchronized void clear() {
+            Arrays.fill(keys, 0L);
+            Arrays.fill(values, null);
+            Arrays.fill(freq, (byte) 0);
+            size = 0;
+        }
+
+        synchronized float[] get(long key) {
+            for (int i = (int) key & mask; keys[i] != 0L; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    if (freq[i] < MAX_FREQ) freq[i]++;
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        // Returns true when an entry had to be evicted to make room.
+        synchronized boolean put(long key, float[] value) {
+            int i = (int) key & mask;
+            for (; keys[i] != 0L; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return false;
+                }
+            }
+
+            boolean evicted = false;
+            if (size >= maxSize) {
+                removeAt(victim());
+                evicted = true;
+                i = (int) key & mask;
+                while (keys[i] != 0L) i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            freq[i] = 1;
+            size++;
+            return evicted;
+        }
+
+        // Samples the next SAMPLE occupied slots from a rotating hand, ageing each one,
+        // and picks the least used.
+        private int victim() {
+            int best = -1;
+            int seen = 0;
+            for (int step = 0; step <= mask && seen < SAMPLE; step++) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+                if (keys[i] == 0L) continue;
+                seen++;
+                if (best < 0 || freq[i] < freq[best]) best = i;
+                if (freq[i] > 0) freq[i]--;
+            }
+            return best;
+        }
+
+        private void removeAt(int i) {
+            int hole = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == 0L) break;
+                int home = (int) keys[j] & mask;
+                // Move j back into the hole unless its home lies cyclically in (hole, j].
+                boolean stays = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+                if (stays) continue;
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                freq[hole] = freq[j];
+                hole = j;
+            }
+            keys[hole] = 0L;
+            values[hole] = null;
+            freq[hole] = 0;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.system.OsConstants;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+// Runs the embedding model in the module's own process so the ORT session, its arena, the
+// tokenizer and the full embedding cache stay out of the launcher. Calls are synchronous binder
+// transactions carrying a batch of texts; vectors come back in a read-only SharedMemory region
+// instead of being copied through the reply parcel.
+//
+// request: interface token, model id, dimensions, priority ordinal, texts
+// reply:   status, then for STATUS_OK: dimensions, per-row presence, SharedMemory (if dimensions > 0)
+//
+// The launcher cannot read this process's data dir, so it also asks here for the model list,
+// which includes models side-loaded into files/semantic_models/.
+// request: interface token
+// reply:   status, then for STATUS_OK: count, and per model: id, label, dimensions
+public final class EmbeddingService extends Service {
+
+    static final String DESCRIPTOR = "be.zvz.sony.launchersearchenhancer.reranker.EmbeddingService";
+    static final int TRANSACTION_EMBED = IBinder.FIRST_CALL_TRANSACTION;
+    static final int TRANSACTION_LIST_MODELS = IBinder.FIRST_CALL_TRANSACTION + 1;
+
+    static final int STATUS_OK = 0;
+    static final int STATUS_NOT_READY = 1;
+    static final int STATUS_ERROR = 2;
+
+    private static final String TAG = "EmbeddingService";
+    private static final String TARGET_LAUNCHER_PACKAGE = "com.sonymobile.launcher";
+    private static final int MAX_BATCH = 64;
+
+    private final SemanticReranker reranker = new SemanticReranker();
+    private final Binder binder = new EmbeddingBinder(this);
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    private void embed(Parcel data, Parcel reply) {
+        String modelId = data.readString();
+        int dimensions = data.readInt();
+        int priorityOrdinal = data.readInt();
+        List<String> texts = data.createStringArrayList();
+
+        InferenceScheduler.Priority[] priorities = InferenceScheduler.Priority.values();
+        if (!isAllowedCaller(Binder.getCallingUid()) || modelId == null || texts == null
+                || texts.size() > MAX_BATCH || priorityOrdinal < 0 || priorityOrdinal >= priorities.length) {
+            reply.writeInt(STATUS_ERROR);
+            return;
+        }
+
+        float[][] vectors;
+        try {
+            vectors = reranker.embedForRemote(this, modelId, dimensions, priorities[priorityOrdinal], texts);
+        } catch (Throwable t) {
+            Log.w(TAG, "embed failed", t);
+            reply.writeInt(STATUS_ERROR);
+            return;
+        }
+        if (vectors == null) {
+            reply.writeInt(STATUS_NOT_READY);
+            return;
+        }
+
+        int dim = 0;
+        boolean[] present = new boolean[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            if (vectors[i] == null || (dim != 0 && vectors[i].length != dim)) continue;
+            dim = vectors[i].length;
+            present[i] = true;
+        }
+
+        if (dim == 0) {
+            reply.writeInt(STATUS_OK);
+            reply.writeInt(0);
+            reply.writeBooleanArray(present);
+            return;
+        }
+
+        try (SharedMemory shared = SharedMemory.create("xls-embeddings", vectors.length * dim * Float.BYTES)) {
+            ByteBuffer mapped = shared.mapReadWrite();
+            FloatBuffer out = mapped.order(ByteOrder.nativeOrder()).asFloatBuffer();
+            for (int i = 0; i < vectors.length; i++) {
+                if (!present[i]) continue;
+                out.position(i * dim);
+                out.put(vectors[i]);
+            }
+            SharedMemory.unmap(mapped);
+            shared.setProtect(OsConstants.PROT_READ);
+
+            reply.writeInt(STATUS_OK);
+            reply.writeInt(dim);
+            reply.writeBooleanArray(present);
+            // The parcel keeps its own duplicate of the descriptor, so closing ours is safe.
+            shared.writeToParcel(reply, 0);
+        } catch (Throwable t) {
+            Log.w(TAG, "shared memory transfer failed", t);
+            reply.writeInt(STATUS_ERROR);
+        }
+    }
+
+    private void listModels(Parcel reply) {
+        if (!isAllowedCaller(Binder.getCallingUid())) {
+            reply.writeInt(STATUS_ERROR);
+            return;
+        }
+
+        List<ModelSpec> models;
+        try {
+            models = reranker.availableModels(this);
+        } catch (Throwable t) {
+            Log.w(TAG, "model list failed", t);
+            reply.writeInt(STATUS_ERROR);
+            return;
+        }
+
+        reply.writeInt(STATUS_OK);
+        reply.writeInt(models.size());
+        for (ModelSpec spec : models) {
+            reply.writeString(spec.id());
+            reply.writeString(spec.label());
+            reply.writeInt(spec.dimensions());
+        }
+    }
+
+    private boolean isAllowedCaller(int uid) {
+        if (uid == Process.myUid()) return true;
+        String[] packages = getPackageManager().getPackagesForUid(uid);
+        if (packages == null) return false;
+        for (String packageName : packages) {
+            if (TARGET_LAUNCHER_PACKAGE.equals(packageName)) return true;
+            if (getPackageName().equals(packageName)) return true;
+        }
+        return false;
+    }
+
+    private static final class EmbeddingBinder extends Binder {
+        private final WeakReference<EmbeddingService> serviceRef;
+
+        EmbeddingBinder(EmbeddingService service) {
+            serviceRef = new WeakReference<>(service);
+        }
+
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            if (code != TRANSACTION_EMBED && code != TRANSACTION_LIST_MODELS) {
+                return super.onTransact(code, data, reply, flags);
+            }
+
+            data.enforceInterface(DESCRIPTOR);
+            EmbeddingService service = serviceRef.get();
+            if (service == null) {
+                reply.writeInt(STATUS_ERROR);
+                return true;
+            }
+            if (code == TRANSACTION_EMBED) service.embed(data, reply);
+            else service.listModels(reply);
+            return true;
+        }
+    }
+}
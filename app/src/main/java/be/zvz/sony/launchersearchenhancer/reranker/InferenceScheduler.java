@@ -0,0 +1,105 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Admission control for model inference shared by search and background work. Interactive
+// requests are admitted at once; background requests run one at a time and only while no
+// interactive request is running, so a long index or auto-folder pass yields to typing at
+// every inference boundary instead of competing with it.
+final class InferenceScheduler {
+
+    enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    interface Task<T> {
+        T run() throws Exception;
+    }
+
+    record Stats(long interactiveRuns, long backgroundRuns, int backgroundQueued, int maxBackgroundQueued,
+                 long backgroundWaitMillis, long maxBackgroundWaitMillis, long yields) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "interactive=%d background=%d queued=%d maxQueued=%d wait=%dms maxWait=%dms yields=%d",
+                    interactiveRuns, backgroundRuns, backgroundQueued, maxBackgroundQueued,
+                    backgroundWaitMillis, maxBackgroundWaitMillis, yields);
+        }
+    }
+
+    private final Object lock = new Object();
+    private int interactiveActive;
+    private boolean backgroundActive;
+    private int backgroundQueued;
+    private int maxBackgroundQueued;
+    private long maxBackgroundWaitNanos;
+
+    private final LongAdder interactiveRuns = new LongAdder();
+    private final LongAdder backgroundRuns = new LongAdder();
+    private final LongAdder backgroundWaitNanos = new LongAdder();
+    private final LongAdder yields = new LongAdder();
+
+    <T> T run(Priority priority, Task<T> task) throws Exception {
+        return priority == Priority.INTERACTIVE ? runInteractive(task) : runBackground(task);
+    }
+
+    private <T> T runInteractive(Task<T> task) throws Exception {
+        synchronized (lock) {
+            interactiveActive++;
+        }
+        try {
+            return task.run();
+        } finally {
+            synchronized (lock) {
+                if (--interactiveActive == 0) lock.notifyAll();
+            }
+            interactiveRuns.increment();
+        }
+    }
+
+    private <T> T runBackground(Task<T> task) throws Exception {
+        long start = System.nanoTime();
+        synchronized (lock) {
+            backgroundQueued++;
+            maxBackgroundQueued = Math.max(maxBackgroundQueued, backgroundQueued);
+            boolean yielded = false;
+            try {
+                while (backgroundActive || interactiveActive > 0) {
+                    if (interactiveActive > 0) yielded = true;
+                    lock.wait();
+                }
+            } finally {
+                backgroundQueued--;
+            }
+            backgroundActive = true;
+            if (yielded) yields.increment();
+            maxBackgroundWaitNanos = Math.max(maxBackgroundWaitNanos, System.nanoTime() - start);
+        }
+        backgroundWaitNanos.add(System.nanoTime() - start);
+
+        try {
+            return task.run();
+        } finally {
+            synchronized (lock) {
+                backgroundActive = false;
+                lock.notifyAll();
+            }
+            backgroundRuns.increment();
+        }
+    }
+
+    Stats stats() {
+        int queued;
+        int maxQueued;
+        long maxWait;
+        synchronized (lock) {
+            queued = backgroundQueued;
+            maxQueued = maxBackgroundQueued;
+            maxWait = maxBackgroundWaitNanos;
+        }
+        return new Stats(interactiveRuns.sum(), backgroundRuns.sum(), queued, maxQueued,
+                backgroundWaitNanos.sum() / 1_000_000L, maxWait / 1_000_000L, yields.sum());
+    }
+}
@@ -0,0 +1,698 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+final class JsonTokenizer {
+
+    private static final int MAGIC = 0x5453_4C58; // "XLST"
+    private static final int FORMAT_VERSION = 2;
+    private static final byte TYPE_WORDPIECE = 1;
+    private static final byte TYPE_UNIGRAM = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 5 * 4;
+
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    interface Impl {
+        int encode(String text, Encoded out);
+
+        byte type();
+
+        int payloadBytes();
+
+        void writePayload(ByteBuffer out);
+    }
+
+    private final Impl impl;
+    private final Config config;
+
+    private JsonTokenizer(Impl impl, Config config) {
+        this.impl = impl;
+        this.config = config;
+    }
+
+    // Maps the compiled form when its stamp matches the source; otherwise stream-parses tokenizer.json,
+    // writes the compiled form for next time and switches to the mapped copy so the heap build can be dropped.
+    static JsonTokenizer load(Source tokenizerJson, long sourceStamp, File compiledFile) throws Exception {
+        JsonTokenizer mapped = readCompiled(compiledFile, sourceStamp);
+        if (mapped != null) return mapped;
+
+        JsonTokenizer parsed = fromTokenizerJson(tokenizerJson);
+        try {
+            parsed.writeCompiled(compiledFile, sourceStamp);
+            JsonTokenizer remapped = readCompiled(compiledFile, sourceStamp);
+            if (remapped != null) return remapped;
+        } catch (Throwable ignored) {
+            compiledFile.delete();
+        }
+        return parsed;
+    }
+
+    static JsonTokenizer fromTokenizerJson(Source tokenizerJson) throws Exception {
+        Parsed p = new Parsed();
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                tokenizerJson.open(), StandardCharsets.UTF_8), 64 * 1024))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "added_tokens" -> readAddedTokens(reader, p.addedTokens);
+                    case "normalizer" -> p.lowercase = readLowercaseFlag(reader);
+                    case "model" -> readModel(reader, p);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        if (p.vocabSize == 0) throw new IllegalStateException("tokenizer vocab empty");
+
+        if ("WordPiece".equalsIgnoreCase(p.modelType)) {
+            return WordPieceImpl.fromParsed(p);
+        }
+
+        if ("Unigram".equalsIgnoreCase(p.modelType)) {
+            return UnigramImpl.fromParsed(p);
+        }
+
+        throw new IllegalStateException("Unsupported tokenizer model.type=" + p.modelType);
+    }
+
+    int encode(String text, Encoded out) {
+        return impl.encode(text, out);
+    }
+
+    // --- Compiled form ---
+
+    private static JsonTokenizer readCompiled(File compiledFile, long sourceStamp) {
+        if (!compiledFile.isFile() || compiledFile.length() < HEADER_BYTES) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(compiledFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (map.getInt() != MAGIC || map.getInt() != FORMAT_VERSION) return null;
+            if (map.getLong() != sourceStamp) return null;
+
+            byte type = map.get();
+            boolean lowercase = map.get() != 0;
+            map.getShort();
+            Config config = new Config(map.getInt(), map.getInt(), map.getInt(), map.getInt(),
+                    lowercase, map.getInt());
+
+            Impl impl;
+            if (type == TYPE_WORDPIECE) {
+                CharTrie wordStart = CharTrie.readFrom(map);
+                CharTrie continuation = CharTrie.readFrom(map);
+                impl = new WordPieceImpl(wordStart, continuation, config);
+            } else if (type == TYPE_UNIGRAM) {
+                CharTrie pieces = CharTrie.readFrom(map);
+                int scoreCount = map.getInt();
+                ByteBuffer scoreBytes = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+                scoreBytes.limit(scoreCount * Float.BYTES);
+                impl = new UnigramImpl(pieces, scoreBytes.asFloatBuffer(), config);
+            } else {
+                return null;
+            }
+            return new JsonTokenizer(impl, config);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    private void writeCompiled(File compiledFile, long sourceStamp) throws IOException {
+        File tmp = new File(compiledFile.getParentFile(), compiledFile.getName() + ".tmp");
+        int size = HEADER_BYTES + impl.payloadBytes();
+
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+
+            out.putInt(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            out.putLong(sourceStamp);
+            out.put(impl.type());
+            out.put((byte) (config.lowercase ? 1 : 0));
+            out.putShort((short) 0);
+            out.putInt(config.clsId);
+            out.putInt(config.sepId);
+            out.putInt(config.unkId);
+            out.putInt(config.padId);
+            out.putInt(config.maxInputCharsPerWord);
+            impl.writePayload(out);
+            out.force();
+        }
+
+        if (compiledFile.exists() && !compiledFile.delete()) {
+            throw new IOException("Failed deleting old file: " + compiledFile.getAbsolutePath());
+        }
+        if (!tmp.renameTo(compiledFile)) {
+            tmp.delete();
+            throw new IOException("Failed to move temp file: " + compiledFile.getAbsolutePath());
+        }
+    }
+
+    // --- Streaming tokenizer.json parsing ---
+
+    private static final class Parsed {
+        final Map<String, Integer> addedTokens = new LinkedHashMap<>();
+        boolean lowercase;
+        String modelType = "";
+        String unkToken = "[UNK]";
+        int unkId = -1;
+        int maxInputCharsPerWord = 100;
+
+        String[] pieces = new String[1 << 15];
+        int[] ids = new int[1 << 15];
+        float[] scores;
+        int vocabSize;
+
+        void add(String piece, int id, float score) {
+            if (vocabSize == pieces.length) {
+                pieces = Arrays.copyOf(pieces, vocabSize * 2);
+                ids = Arrays.copyOf(ids, vocabSize * 2);
+                if (scores != null) scores = Arrays.copyOf(scores, vocabSize * 2);
+            }
+            pieces[vocabSize] = piece;
+            ids[vocabSize] = id;
+            if (scores != null) scores[vocabSize] = score;
+            vocabSize++;
+        }
+    }
+
+    private static void readAddedTokens(JsonReader reader, Map<String, Integer> out) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String content = null;
+            int id = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("content".equals(name) && reader.peek() == JsonToken.STRING) {
+                    content = reader.nextString();
+                } else if ("id".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    id = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (content != null && id >= 0) out.putIfAbsent(content, id);
+        }
+        reader.endArray();
+    }
+
+    private static boolean readLowercaseFlag(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return false;
+        }
+        boolean lowercase = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("lowercase".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                lowercase |= reader.nextBoolean();
+            } else if ("normalizers".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) lowercase |= readLowercaseFlag(reader);
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return lowercase;
+    }
+
+    private static void readModel(JsonReader reader, Parsed p) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            switch (name) {
+                case "type" -> p.modelType = token == JsonToken.STRING ? reader.nextString() : skip(reader, "");
+                case "unk_token" -> p.unkToken = token == JsonToken.STRING ? reader.nextString() : skip(reader, p.unkToken);
+                case "unk_id" -> p.unkId = token == JsonToken.NUMBER ? reader.nextInt() : skip(reader, -1);
+                case "max_input_chars_per_word" -> p.maxInputCharsPerWord =
+                        token == JsonToken.NUMBER ? reader.nextInt() : skip(reader, 100);
+                case "vocab" -> readVocab(reader, p);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readVocab(JsonReader reader, Parsed p) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            // WordPiece: {"piece": id, ...}
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String piece = reader.nextName();
+                p.add(piece, reader.nextInt(), 0f);
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            // Unigram: [["piece", score], ...], ids are positions
+            p.scores = new float[p.pieces.length];
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginArray();
+                String piece = reader.nextString();
+                float score = (float) reader.nextDouble();
+                while (reader.hasNext()) reader.skipValue();
+                reader.endArray();
+                p.add(piece, p.vocabSize, score);
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    private static <T> T skip(JsonReader reader, T fallback) throws IOException {
+        reader.skipValue();
+        return fallback;
+    }
+
+    private static int pickSpecialId(Parsed p, CharTrie vocab, String primary, String alt, int fallback) {
+        int fromVocab = vocab.get(primary);
+        if (fromVocab >= 0) return fromVocab;
+        int fromAlt = vocab.get(alt);
+        if (fromAlt >= 0) return fromAlt;
+
+        for (Map.Entry<String, Integer> added : p.addedTokens.entrySet()) {
+            if (primary.equals(added.getKey()) || alt.equals(added.getKey())) return added.getValue();
+        }
+        return fallback;
+    }
+
+    private static String normalizeText(String s, boolean lowercase) {
+        if (s == null) return "";
+        String out = Normalizer.normalize(s, Normalizer.Form.NFKC).trim();
+        if (lowercase) out = out.toLowerCase(Locale.ROOT);
+        return out;
+    }
+
+    private record Config(int clsId, int sepId, int unkId, int padId,
+                          boolean lowercase, int maxInputCharsPerWord) {}
+
+    // Reusable, direct (native-order) id buffers so ORT can wrap them without another copy.
+    static final class Encoded {
+        final int maxLen;
+        final LongBuffer inputIds;
+        final LongBuffer attentionMask;
+        final LongBuffer tokenTypeIds;
+        int length;
+
+        Encoded(int maxLen) {
+            this.maxLen = maxLen;
+            this.inputIds = directLongs(maxLen);
+            this.attentionMask = directLongs(maxLen);
+            this.tokenTypeIds = directLongs(maxLen);
+        }
+
+        private void begin(int clsId) {
+            length = 0;
+            inputIds.put(length++, clsId);
+        }
+
+        private boolean hasRoom() {
+            return length < maxLen - 1;
+        }
+
+        private void add(int id) {
+            inputIds.put(length++, id);
+        }
+
+        private void finish(int sepId, int padId) {
+            inputIds.put(length++, sepId);
+            for (int i = 0; i < maxLen; i++) {
+                if (i >= length) inputIds.put(i, padId);
+                attentionMask.put(i, i < length ? 1L : 0L);
+            }
+        }
+
+        private static LongBuffer directLongs(int n) {
+            return ByteBuffer.allocateDirect(n * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+    }
+
+    // --- WordPiece ---
+
+    private static final class WordPieceImpl implements Impl {
+        private static final String CONTINUATION = "##";
+
+        private final CharTrie wordStart;
+        private final CharTrie continuation;
+        private final int clsId, sepId, unkId, padId;
+        private final boolean lowercase;
+        private final int maxInputCharsPerWord;
+        private final ThreadLocal<int[]> pieceScratch = new ThreadLocal<>();
+
+        WordPieceImpl(CharTrie wordStart, CharTrie continuation, Config config) {
+            this.wordStart = wordStart;
+            this.continuation = continuation;
+            this.clsId = config.clsId;
+            this.sepId = config.sepId;
+            this.unkId = config.unkId;
+            this.padId = config.padId;
+            this.lowercase = config.lowercase;
+            this.maxInputCharsPerWord = config.maxInputCharsPerWord;
+        }
+
+        static JsonTokenizer fromParsed(Parsed p) {
+            int n = p.vocabSize;
+            int contCount = 0;
+            for (int i = 0; i < n; i++) {
+                if (isContinuation(p.pieces[i])) contCount++;
+            }
+
+            String[] startKeys = new String[n - contCount];
+            int[] startIds = new int[n - contCount];
+            String[] contKeys = new String[contCount];
+            int[] contIds = new int[contCount];
+            int s = 0, c = 0;
+            for (int i = 0; i < n; i++) {
+                String token = p.pieces[i];
+                if (isContinuation(token)) {
+                    contKeys[c] = token.substring(CONTINUATION.length());
+                    contIds[c++] = p.ids[i];
+                } else {
+                    startKeys[s] = token;
+                    startIds[s++] = p.ids[i];
+                }
+            }
+            CharTrie wordStart = CharTrie.build(startKeys, startIds);
+            CharTrie continuation = CharTrie.build(contKeys, contIds);
+
+            Config config = new Config(
+                    pickSpecialId(p, wordStart, "[CLS]", "<s>", 101),
+                    pickSpecialId(p, wordStart, "[SEP]", "</s>", 102),
+                    pickSpecialId(p, wordStart, p.unkToken, "<unk>", 100),
+                    pickSpecialId(p, wordStart, "[PAD]", "<pad>", 0),
+                    p.lowercase,
+                    p.maxInputCharsPerWord);
+            return new JsonTokenizer(new WordPieceImpl(wordStart, continuation, config), config);
+        }
+
+        private static boolean isContinuation(String token) {
+            return token.length() > CONTINUATION.length() && token.startsWith(CONTINUATION);
+        }
+
+        @Override
+        public byte type() {
+            return TYPE_WORDPIECE;
+        }
+
+        @Override
+        public int payloadBytes() {
+            return wordStart.byteSize() + continuation.byteSize();
+        }
+
+        @Override
+        public void writePayload(ByteBuffer out) {
+            wordStart.writeTo(out);
+            continuation.writeTo(out);
+        }
+
+        @Override
+        public int encode(String text, Encoded out) {
+            out.begin(clsId);
+
+            String norm = normalizeText(text, lowercase);
+            int len = norm.length();
+            int wordStartAt = -1;
+            for (int i = 0; i <= len && out.hasRoom(); i++) {
+                char ch = i < len ? norm.charAt(i) : ' ';
+                boolean ws = Character.isWhitespace(ch);
+                boolean delim = !ws && isDelimiter(ch);
+                if (ws || delim) {
+                    if (wordStartAt >= 0) {
+                        wordPiece(norm, wordStartAt, i, out);
+                        wordStartAt = -1;
+                    }
+                    if (delim && out.hasRoom()) wordPiece(norm, i, i + 1, out);
+                } else if (wordStartAt < 0) {
+                    wordStartAt = i;
+                }
+            }
+
+            out.finish(sepId, padId);
+            return out.length;
+        }
+
+        private boolean isDelimiter(char c) {
+            return Character.isISOControl(c) || Character.isSpaceChar(c)
+                    || ".,!?;:()[]{}\"'`~@#$%^&*+-=/\\|_<>".indexOf(c) >= 0;
+        }
+
+        private void wordPiece(String s, int from, int to, Encoded out) {
+            if (from >= to) return;
+            if (to - from > maxInputCharsPerWord) {
+                out.add(unkId);
+                return;
+            }
+
+            int[] pieces = pieceScratch.get();
+            if (pieces == null || pieces.length < to - from) {
+                pieces = new int[Math.max(to - from, 32)];
+                pieceScratch.set(pieces);
+            }
+
+            int count = 0;
+            int start = from;
+            while (start < to) {
+                CharTrie trie = start == from ? wordStart : continuation;
+                int node = CharTrie.ROOT;
+                int curId = CharTrie.NONE;
+                int curEnd = start;
+                for (int p = start; p < to; p++) {
+                    node = trie.child(node, s.charAt(p));
+                    if (node == CharTrie.NONE) break;
+                    int id = trie.value(node);
+                    if (id >= 0) {
+                        curId = id;
+                        curEnd = p + 1;
+                    }
+                }
+
+                if (curId == CharTrie.NONE) {
+                    out.add(unkId);
+                    return;
+                }
+                pieces[count++] = curId;
+                start = curEnd;
+            }
+
+            for (int i = 0; i < count && out.hasRoom(); i++) out.add(pieces[i]);
+        }
+    }
+
+    // --- Unigram ---
+
+    private static final class UnigramImpl implements Impl {
+        private static final char SPIECE_WS = '\u2581';
+
+        private final CharTrie pieces;
+        private final FloatBuffer scores;
+        private final int clsId, sepId, unkId, padId;
+        private final boolean lowercase;
+        private final ThreadLocal<Lattice> latticeScratch = ThreadLocal.withInitial(Lattice::new);
+
+        UnigramImpl(CharTrie pieces, FloatBuffer scores, Config config) {
+            this.pieces = pieces;
+            this.scores = scores;
+            this.clsId = config.clsId;
+            this.sepId = config.sepId;
+            this.unkId = config.unkId;
+            this.padId = config.padId;
+            this.lowercase = config.lowercase;
+        }
+
+        static JsonTokenizer fromParsed(Parsed p) {
+            if (p.scores == null) throw new IllegalStateException("Unigram vocab has no scores");
+            int n = p.vocabSize;
+            CharTrie pieces = CharTrie.build(Arrays.copyOf(p.pieces, n), Arrays.copyOf(p.ids, n));
+            FloatBuffer scores = FloatBuffer.wrap(Arrays.copyOf(p.scores, n));
+
+            Config config = new Config(
+                    pickSpecialId(p, pieces, "[CLS]", "<s>", 1),
+                    pickSpecialId(p, pieces, "[SEP]", "</s>", 2),
+                    p.unkId >= 0 ? p.unkId : pickSpecialId(p, pieces, "[UNK]", "<unk>", 0),
+                    pickSpecialId(p, pieces, "[PAD]", "<pad>", 0),
+                    p.lowercase,
+                    0);
+            return new JsonTokenizer(new UnigramImpl(pieces, scores, config), config);
+        }
+
+        @Override
+        public byte type() {
+            return TYPE_UNIGRAM;
+        }
+
+        @Override
+        public int payloadBytes() {
+            return pieces.byteSize() + Integer.BYTES + scores.limit() * Float.BYTES;
+        }
+
+        @Override
+        public void writePayload(ByteBuffer out) {
+            pieces.writeTo(out);
+            out.putInt(scores.limit());
+            for (int i = 0; i < scores.limit(); i++) out.putFloat(scores.get(i));
+        }
+
+        @Override
+        public int encode(String text, Encoded out) {
+            out.begin(clsId);
+
+            Lattice lattice = latticeScratch.get();
+            int n = toSentencePieceLike(normalizeText(text, lowercase), lattice);
+            int count = unigramTokenize(lattice, n);
+
+            for (int i = count - 1; i >= 0 && out.hasRoom(); i--) {
+                out.add(lattice.reversed[i]);
+            }
+
+            out.finish(sepId, padId);
+            return out.length;
+        }
+
+        // Writes the sentencepiece view (whitespace collapsed to U+2581, with a leading marker) into lattice.input.
+        private int toSentencePieceLike(String s, Lattice lattice) {
+            lattice.ensure(s.length() + 1);
+            char[] buf = lattice.input;
+            int n = 0;
+            boolean pendingSpace = true;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (isSpace(c)) {
+                    pendingSpace = n > 0 || pendingSpace;
+                    continue;
+                }
+                if (pendingSpace) {
+                    buf[n++] = SPIECE_WS;
+                    pendingSpace = false;
+                }
+                buf[n++] = c;
+            }
+            return n;
+        }
+
+        private static boolean isSpace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+        }
+
+        private int unigramTokenize(Lattice lattice, int n) {
+            if (n == 0) return 0;
+
+            char[] input = lattice.input;
+            float[] best = lattice.best;
+            int[] prev = lattice.prev;
+            int[] pieceAt = lattice.pieceAt;
+
+            for (int i = 0; i <= n; i++) {
+                best[i] = Float.NEGATIVE_INFINITY;
+                prev[i] = -1;
+            }
+            best[0] = 0f;
+
+            for (int i = 0; i < n; i++) {
+                if (best[i] == Float.NEGATIVE_INFINITY) continue;
+
+                boolean matched = false;
+                int node = CharTrie.ROOT;
+                for (int j = i; j < n; j++) {
+                    node = pieces.child(node, input[j]);
+                    if (node == CharTrie.NONE) break;
+                    int id = pieces.value(node);
+                    if (id < 0) continue;
+                    matched = true;
+                    float cand = best[i] + scores.get(id);
+                    if (cand > best[j + 1]) {
+                        best[j + 1] = cand;
+                        prev[j + 1] = i;
+                        pieceAt[j + 1] = id;
+                    }
+                }
+
+                if (!matched) {
+                    int j = i + 1;
+                    float cand = best[i] - 100f;
+                    if (cand > best[j]) {
+                        best[j] = cand;
+                        prev[j] = i;
+                        pieceAt[j] = CharTrie.NONE;
+                    }
+                }
+            }
+
+            int[] reversed = lattice.reversed;
+            int count = 0;
+            int pos = n;
+            while (pos > 0) {
+                int p = prev[pos];
+                if (p < 0) {
+                    reversed[count++] = unkId;
+                    pos--;
+                    continue;
+                }
+                int id = pieceAt[pos];
+                reversed[count++] = id < 0 ? unkId : id;
+                pos = p;
+            }
+            return count;
+        }
+
+        private static final class Lattice {
+            char[] input = new char[0];
+            float[] best = new float[0];
+            int[] prev = new int[0];
+            int[] pieceAt = new int[0];
+            int[] reversed = new int[0];
+
+            void ensure(int chars) {
+                if (input.length >= chars) return;
+                int cap = Math.max(chars, 64);
+                input = new char[cap];
+                best = new float[cap + 1];
+                prev = new int[cap + 1];
+                pieceAt = new int[cap + 1];
+                reversed = new int[cap];
+            }
+        }
+    }
+}
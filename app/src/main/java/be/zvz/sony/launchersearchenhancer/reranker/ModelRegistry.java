@@ -0,0 +1,189 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Models listed in the bundled manifest (assets/semantic/models.json) followed by side-loaded
+// ones: each directory under the external root holding a model.json, with model and tokenizer
+// paths relative to that directory, so a model can be trialled without rebuilding the module.
+// An entry may carry per-ABI "variants" ({"x86_64": {"model": ..., "sha256": ...}}); the first
+// supported ABI with a variant wins, then the top-level model, and an entry with neither is
+// left out on that device.
+final class ModelRegistry {
+
+    static final String BUNDLED_MANIFEST = "semantic/models.json";
+    static final String EXTERNAL_MANIFEST = "model.json";
+
+    private static final int DEFAULT_MAX_LENGTH = 48;
+    // Ids name cache directories, so keep them to safe file name characters.
+    private static final Pattern ID_PATTERN = Pattern.compile("[a-z0-9][a-z0-9._-]*");
+
+    private final List<ModelSpec> models;
+
+    private ModelRegistry(List<ModelSpec> models) {
+        this.models = Collections.unmodifiableList(models);
+    }
+
+    static ModelRegistry load(JsonTokenizer.Source bundledManifest, File externalRoot, List<String> abis)
+            throws IOException {
+        List<ModelSpec> models = new ArrayList<>();
+        try (InputStream in = bundledManifest.open()) {
+            addAll(models, parse(in, null, abis));
+        }
+
+        File[] dirs = externalRoot == null ? null : externalRoot.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File manifest = new File(dir, EXTERNAL_MANIFEST);
+                if (!manifest.isFile()) continue;
+                try (InputStream in = new FileInputStream(manifest)) {
+                    addAll(models, parse(in, dir, abis));
+                } catch (IOException | RuntimeException ignored) {
+                    // A broken side-loaded manifest only hides that model.
+                }
+            }
+        }
+
+        if (models.isEmpty()) throw new IllegalStateException("no embedding models for ABIs " + abis);
+        return new ModelRegistry(models);
+    }
+
+    // The list EmbeddingService reported; null when it reported none.
+    static ModelRegistry of(List<ModelSpec> models) {
+        return models == null || models.isEmpty() ? null : new ModelRegistry(new ArrayList<>(models));
+    }
+
+    List<ModelSpec> models() {
+        return models;
+    }
+
+    ModelSpec defaultModel() {
+        return models.get(0);
+    }
+
+    ModelSpec find(String id) {
+        if (id == null) return null;
+        for (ModelSpec spec : models) {
+            if (spec.id().equals(id)) return spec;
+        }
+        return null;
+    }
+
+    // First registration of an id wins, so a side-loaded model cannot shadow a bundled one.
+    private static void addAll(List<ModelSpec> out, List<ModelSpec> parsed) {
+        for (ModelSpec spec : parsed) {
+            boolean duplicate = false;
+            for (ModelSpec existing : out) {
+                if (existing.id().equals(spec.id())) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) out.add(spec);
+        }
+    }
+
+    // A manifest is either one model object or an array of them.
+    static List<ModelSpec> parse(InputStream in, File baseDir, List<String> abis) throws IOException {
+        List<ModelSpec> out = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8)))) {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) addIfPresent(out, readSpec(reader, baseDir, abis));
+                reader.endArray();
+            } else {
+                addIfPresent(out, readSpec(reader, baseDir, abis));
+            }
+        }
+        return out;
+    }
+
+    private static void addIfPresent(List<ModelSpec> out, ModelSpec spec) {
+        if (spec != null) out.add(spec);
+    }
+
+    // Returns null when the entry has no model this device can run.
+    private static ModelSpec readSpec(JsonReader reader, File baseDir, List<String> abis) throws IOException {
+        String id = null;
+        String label = null;
+        String model = null;
+        String tokenizer = null;
+        int dimensions = 0;
+        ModelSpec.Pooling pooling = ModelSpec.Pooling.MEAN;
+        int maxLength = DEFAULT_MAX_LENGTH;
+        String sha256 = null;
+        Map<String, String[]> variants = new HashMap<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id" -> id = reader.nextString();
+                case "label" -> label = reader.nextString();
+                case "model" -> model = reader.nextString();
+                case "tokenizer" -> tokenizer = reader.nextString();
+                case "dimensions" -> dimensions = reader.nextInt();
+                case "pooling" -> pooling = ModelSpec.Pooling.valueOf(reader.nextString().toUpperCase(Locale.ROOT));
+                case "max_length" -> maxLength = reader.nextInt();
+                case "sha256" -> sha256 = reader.nextString().toLowerCase(Locale.ROOT);
+                case "variants" -> readVariants(reader, variants);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id == null || !ID_PATTERN.matcher(id).matches()) {
+            throw new IllegalStateException("invalid model id: " + id);
+        }
+        for (String abi : abis) {
+            String[] variant = variants.get(abi);
+            if (variant == null) continue;
+            model = variant[0];
+            sha256 = variant[1];
+            break;
+        }
+        if (tokenizer == null || (model == null && variants.isEmpty())) {
+            throw new IllegalStateException("model " + id + " needs model and tokenizer paths");
+        }
+        if (model == null) return null;
+        if (maxLength <= 2) throw new IllegalStateException("model " + id + " max_length too small");
+        return new ModelSpec(id, label == null ? id : label, model, tokenizer, Math.max(0, dimensions),
+                pooling, maxLength, sha256, baseDir);
+    }
+
+    // abi -> {model, sha256}
+    private static void readVariants(JsonReader reader, Map<String, String[]> out) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String abi = reader.nextName();
+            String model = null;
+            String sha256 = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "model" -> model = reader.nextString();
+                    case "sha256" -> sha256 = reader.nextString().toLowerCase(Locale.ROOT);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (model != null) out.put(abi, new String[]{model, sha256});
+        }
+        reader.endObject();
+    }
+}
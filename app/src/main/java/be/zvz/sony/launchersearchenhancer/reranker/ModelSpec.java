@@ -0,0 +1,32 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.io.File;
+
+// One embedding model the reranker can run. Bundled models name assets inside the module
+// APK; side-loaded ones carry the directory their model and tokenizer paths are relative to.
+public record ModelSpec(
+        String id,
+        String label,
+        String model,
+        String tokenizer,
+        int dimensions,
+        Pooling pooling,
+        int maxLength,
+        String sha256,
+        File baseDir
+) {
+
+    public enum Pooling {
+        MEAN,
+        CLS
+    }
+
+    // A model as EmbeddingService reports it to the launcher, which only ever names it by id.
+    static ModelSpec remote(String id, String label, int dimensions) {
+        return new ModelSpec(id, label, null, null, dimensions, Pooling.MEAN, 0, null, null);
+    }
+
+    public boolean bundled() {
+        return baseDir == null;
+    }
+}
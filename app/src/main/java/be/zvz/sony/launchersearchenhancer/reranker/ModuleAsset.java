@@ -0,0 +1,61 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// An asset inside the module APK, identified by the size and CRC-32 recorded in the
+// APK's zip directory so caches derived from it refresh whenever the module is updated.
+final class ModuleAsset {
+
+    private final Context moduleContext;
+    private final String apkPath;
+    final String assetPath;
+    final long stamp;
+    final boolean stored;
+
+    private ModuleAsset(Context moduleContext, String apkPath, String assetPath, long stamp, boolean stored) {
+        this.moduleContext = moduleContext;
+        this.apkPath = apkPath;
+        this.assetPath = assetPath;
+        this.stamp = stamp;
+        this.stored = stored;
+    }
+
+    static ModuleAsset locate(Context moduleContext, String assetPath) throws IOException {
+        String apkPath = moduleContext.getApplicationInfo().sourceDir;
+        try (ZipFile zip = new ZipFile(apkPath)) {
+            ZipEntry entry = zip.getEntry("assets/" + assetPath);
+            if (entry == null) throw new FileNotFoundException(assetPath + " not found in " + apkPath);
+            long stamp = (entry.getSize() << 32) ^ (entry.getCrc() & 0xFFFFFFFFL);
+            return new ModuleAsset(moduleContext, apkPath, assetPath, stamp,
+                    entry.getMethod() == ZipEntry.STORED);
+        }
+    }
+
+    InputStream open() throws IOException {
+        return moduleContext.getAssets().open(assetPath);
+    }
+
+    // Maps the asset bytes straight out of the APK; only possible when it is stored uncompressed.
+    MappedByteBuffer map() throws IOException {
+        if (!stored) throw new IOException(assetPath + " is compressed in the module APK");
+        try (AssetFileDescriptor afd = moduleContext.getAssets().openFd(assetPath);
+             RandomAccessFile apk = new RandomAccessFile(apkPath, "r");
+             FileChannel channel = apk.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+        }
+    }
+
+    String stampHex() {
+        return Long.toHexString(stamp);
+    }
+}
@@ -0,0 +1,185 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.nio.LongBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+
+// Tokenizer + ORT session turning text into L2-normalized sentence vectors. Kept free of
+// Android types so host-side tools run exactly the code the launcher runs.
+final class OnnxEmbedder {
+
+    static final int FULL_DIMENSIONS = 0;
+
+    private final OrtEnvironment env;
+    private final OrtSession session;
+    private final JsonTokenizer tokenizer;
+    private final int maxSeqLen;
+    private final ModelSpec.Pooling pooling;
+    private final int dimensions;
+    private final boolean tokenTypeInput;
+    // Exports with a fixed [1, maxSeqLen] input cannot batch, and fixed-length ones cannot trim padding.
+    private final boolean dynamicBatch;
+    private final boolean dynamicLength;
+    private final ThreadLocal<JsonTokenizer.Encoded> encodeScratch;
+
+    OnnxEmbedder(OrtEnvironment env, OrtSession session, JsonTokenizer tokenizer, int maxSeqLen,
+                 ModelSpec.Pooling pooling, int dimensions) throws OrtException {
+        this.env = env;
+        this.session = session;
+        this.tokenizer = tokenizer;
+        this.maxSeqLen = maxSeqLen;
+        this.pooling = pooling;
+        this.dimensions = Math.max(FULL_DIMENSIONS, dimensions);
+        this.tokenTypeInput = session.getInputNames().contains("token_type_ids");
+        long[] inputShape = session.getInputInfo().get("input_ids").getInfo() instanceof TensorInfo info
+                ? info.getShape()
+                : new long[0];
+        this.dynamicBatch = inputShape.length > 0 && inputShape[0] < 0;
+        this.dynamicLength = inputShape.length > 1 && inputShape[1] < 0;
+        this.encodeScratch = ThreadLocal.withInitial(() -> new JsonTokenizer.Encoded(maxSeqLen));
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    float[] embed(String text) throws OrtException {
+        JsonTokenizer.Encoded e = encodeScratch.get();
+        int tokenCount = tokenizer.encode(text, e);
+        long[] shape = {1, maxSeqLen};
+
+        try (OnnxTensor tIds = OnnxTensor.createTensor(env, e.inputIds, shape);
+             OnnxTensor tMask = OnnxTensor.createTensor(env, e.attentionMask, shape);
+             OnnxTensor tType = OnnxTensor.createTensor(env, e.tokenTypeIds, shape);
+             OrtSession.Result r = session.run(inputs(tIds, tMask, tType))) {
+            if (r == null || r.size() == 0 || r.get(0) == null) return null;
+            Object out = r.get(0).getValue();
+
+            if (out instanceof float[][] v) {
+                return v.length == 0 ? null : truncate(v[0], dimensions);
+            }
+            if (out instanceof float[][][] tokenEmb) {
+                return tokenEmb.length == 0 ? null : pool(tokenEmb[0], tokenCount);
+            }
+        }
+
+        return null;
+    }
+
+    // One session run for several texts, padded to the longest of them when the model allows it.
+    // Rows the model produced nothing for come back null.
+    float[][] embedBatch(List<String> texts) throws OrtException {
+        int n = texts.size();
+        float[][] result = new float[n][];
+        if (n == 1 || (n > 1 && !dynamicBatch)) {
+            for (int i = 0; i < n; i++) result[i] = embed(texts.get(i));
+            return result;
+        }
+        if (n == 0) return result;
+
+        JsonTokenizer.Encoded e = encodeScratch.get();
+        int[] counts = new int[n];
+        long[][] rows = new long[n][];
+        int width = 0;
+        for (int i = 0; i < n; i++) {
+            counts[i] = tokenizer.encode(texts.get(i), e);
+            rows[i] = new long[counts[i]];
+            for (int t = 0; t < counts[i]; t++) rows[i][t] = e.inputIds.get(t);
+            width = Math.max(width, counts[i]);
+        }
+        if (!dynamicLength) width = maxSeqLen;
+
+        long[] ids = new long[n * width];
+        long[] mask = new long[n * width];
+        long[] types = new long[n * width];
+        for (int i = 0; i < n; i++) {
+            // Padding positions are masked out, so their id does not matter.
+            System.arraycopy(rows[i], 0, ids, i * width, counts[i]);
+            for (int t = 0; t < counts[i]; t++) mask[i * width + t] = 1L;
+        }
+
+        long[] shape = {n, width};
+        try (OnnxTensor tIds = OnnxTensor.createTensor(env, LongBuffer.wrap(ids), shape);
+             OnnxTensor tMask = OnnxTensor.createTensor(env, LongBuffer.wrap(mask), shape);
+             OnnxTensor tType = OnnxTensor.createTensor(env, LongBuffer.wrap(types), shape);
+             OrtSession.Result r = session.run(inputs(tIds, tMask, tType))) {
+            if (r == null || r.size() == 0 || r.get(0) == null) return result;
+            Object out = r.get(0).getValue();
+
+            if (out instanceof float[][] v) {
+                for (int i = 0; i < Math.min(n, v.length); i++) result[i] = truncate(v[i], dimensions);
+            } else if (out instanceof float[][][] tokenEmb) {
+                for (int i = 0; i < Math.min(n, tokenEmb.length); i++) result[i] = pool(tokenEmb[i], counts[i]);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, OnnxTensor> inputs(OnnxTensor ids, OnnxTensor mask, OnnxTensor types) {
+        Map<String, OnnxTensor> inputs = new LinkedHashMap<>();
+        inputs.put("input_ids", ids);
+        inputs.put("attention_mask", mask);
+        if (tokenTypeInput) {
+            inputs.put("token_type_ids", types);
+        }
+        return inputs;
+    }
+
+    private float[] pool(float[][] tokenEmb, int tokenCount) {
+        float[] pooled = pooling == ModelSpec.Pooling.CLS
+                ? tokenEmb.length > 0 ? tokenEmb[0] : null
+                : meanPool(tokenEmb, tokenCount);
+        return pooled == null ? null : truncate(pooled, dimensions);
+    }
+
+    void close() throws OrtException {
+        session.close();
+    }
+
+    // What an app is embedded as: its title followed by the package name split into words.
+    static String appText(String title, String pkg) {
+        String pkgTokens = pkg == null ? "" : pkg.replace('.', ' ').replace('_', ' ').replace('-', ' ');
+        return (title == null ? "" : title) + " " + pkgTokens;
+    }
+
+    // Matryoshka-style prefix: the leading dims, renormalized. FULL_DIMENSIONS keeps the whole vector.
+    static float[] truncate(float[] v, int dims) {
+        if (v == null) return null;
+        int n = dims <= FULL_DIMENSIONS ? v.length : Math.min(dims, v.length);
+        double s = 0d;
+        for (int i = 0; i < n; i++) s += v[i] * v[i];
+        float[] out = new float[n];
+        if (s <= 0d) {
+            System.arraycopy(v, 0, out, 0, n);
+            return out;
+        }
+        float inv = (float) (1d / Math.sqrt(s));
+        for (int i = 0; i < n; i++) out[i] = v[i] * inv;
+        return out;
+    }
+
+    private static float[] meanPool(float[][] tokenEmb, int tokenCount) {
+        if (tokenEmb == null || tokenEmb.length == 0 || tokenEmb[0] == null) return null;
+        int dim = tokenEmb[0].length;
+        float[] sum = new float[dim];
+        float count = 0f;
+
+        int len = Math.min(tokenEmb.length, tokenCount);
+        for (int i = 0; i < len; i++) {
+            if (tokenEmb[i] == null) continue;
+            for (int d = 0; d < dim; d++) sum[d] += tokenEmb[i][d];
+            count += 1f;
+        }
+
+        if (count <= 0f) return null;
+        for (int d = 0; d < dim; d++) sum[d] /= count;
+        return sum;
+    }
+}
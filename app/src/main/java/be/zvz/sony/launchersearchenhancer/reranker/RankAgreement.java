@@ -0,0 +1,96 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+
+// How closely truncated-width vectors reproduce the full-width ranking of a fixed item set.
+// Pure Java so it can run offline against vectors produced on a build host.
+final class RankAgreement {
+
+    record Result(int dimensions, int queries, float top1, float overlapAtK, float spearman) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "dims=%d queries=%d top1=%.3f overlap@k=%.3f spearman=%.3f",
+                    dimensions, queries, top1, overlapAtK, spearman);
+        }
+    }
+
+    private RankAgreement() {
+    }
+
+    // queries and items are full-width, L2-normalized vectors of equal length.
+    static Result compare(float[][] queries, float[][] items, int dimensions, int k) {
+        int n = items.length;
+        int topK = Math.min(k, n);
+        float[][] truncatedItems = new float[n][];
+        for (int i = 0; i < n; i++) truncatedItems[i] = OnnxEmbedder.truncate(items[i], dimensions);
+
+        double top1 = 0d;
+        double overlap = 0d;
+        double spearman = 0d;
+        for (float[] q : queries) {
+            int[] full = rankOrder(q, items);
+            int[] cut = rankOrder(OnnxEmbedder.truncate(q, dimensions), truncatedItems);
+
+            if (n > 0 && full[0] == cut[0]) top1 += 1d;
+            overlap += topKOverlap(full, cut, topK);
+            spearman += spearman(full, cut);
+        }
+
+        int m = Math.max(1, queries.length);
+        int dims = queries.length > 0 ? OnnxEmbedder.truncate(queries[0], dimensions).length : dimensions;
+        return new Result(dims, queries.length, (float) (top1 / m), (float) (overlap / m), (float) (spearman / m));
+    }
+
+    // Item indices ordered by descending similarity to q.
+    private static int[] rankOrder(float[] q, float[][] items) {
+        int n = items.length;
+        float[] sims = new float[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            sims[i] = dot(q, items[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Float.compare(sims[b], sims[a]);
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) out[i] = order[i];
+        return out;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        int n = Math.min(a.length, b.length);
+        float d = 0f;
+        for (int i = 0; i < n; i++) d += a[i] * b[i];
+        return d;
+    }
+
+    private static double topKOverlap(int[] a, int[] b, int k) {
+        if (k == 0) return 1d;
+        BitSet seen = new BitSet();
+        for (int i = 0; i < k; i++) seen.set(a[i]);
+        int common = 0;
+        for (int i = 0; i < k; i++) if (seen.get(b[i])) common++;
+        return (double) common / k;
+    }
+
+    private static double spearman(int[] a, int[] b) {
+        int n = a.length;
+        if (n < 2) return 1d;
+        int[] rankA = new int[n];
+        int[] rankB = new int[n];
+        for (int i = 0; i < n; i++) {
+            rankA[a[i]] = i;
+            rankB[b[i]] = i;
+        }
+        double d2 = 0d;
+        for (int i = 0; i < n; i++) {
+            double d = rankA[i] - rankB[i];
+            d2 += d * d;
+        }
+        return 1d - 6d * d2 / ((double) n * ((double) n * n - 1d));
+    }
+}
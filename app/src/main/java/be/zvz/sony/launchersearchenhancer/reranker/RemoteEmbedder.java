@@ -0,0 +1,219 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.DeadObjectException;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.SharedMemory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Launcher side of EmbeddingService. Interactive calls never wait: while the service is unbound,
+// starting, or switching models they fail with Unavailable and search stays lexical. Background
+// calls wait for the binding and retry while the service loads the requested model.
+final class RemoteEmbedder implements Embedder {
+
+    private static final String TAG = "RemoteEmbedder";
+    private static final String MODULE_PACKAGE = "be.zvz.sony.launchersearchenhancer";
+    private static final String SERVICE_CLASS = MODULE_PACKAGE + ".reranker.EmbeddingService";
+    private static final long BACKGROUND_WAIT_MS = 20_000L;
+    private static final long NOT_READY_RETRY_MS = 250L;
+
+    static final class Unavailable extends IOException {
+        Unavailable(String message) {
+            super(message);
+        }
+    }
+
+    private final Connection connection;
+    private final String modelId;
+    private final int dimensions;
+
+    RemoteEmbedder(Connection connection, String modelId, int dimensions) {
+        this.connection = connection;
+        this.modelId = modelId;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String text, InferenceScheduler.Priority priority) throws Exception {
+        return embedBatch(Collections.singletonList(text), priority)[0];
+    }
+
+    @Override
+    public float[][] embedBatch(List<String> texts, InferenceScheduler.Priority priority) throws Exception {
+        boolean interactive = priority == InferenceScheduler.Priority.INTERACTIVE;
+        long deadline = SystemClock.uptimeMillis() + (interactive ? 0L : BACKGROUND_WAIT_MS);
+        while (true) {
+            IBinder binder = connection.binder(Math.max(0L, deadline - SystemClock.uptimeMillis()));
+            if (binder == null) throw new Unavailable("embedding service not connected");
+
+            Parcel data = Parcel.obtain();
+            Parcel reply = Parcel.obtain();
+            try {
+                data.writeInterfaceToken(EmbeddingService.DESCRIPTOR);
+                data.writeString(modelId);
+                data.writeInt(dimensions);
+                data.writeInt(priority.ordinal());
+                data.writeStringList(texts);
+                binder.transact(EmbeddingService.TRANSACTION_EMBED, data, reply, 0);
+
+                int status = reply.readInt();
+                if (status == EmbeddingService.STATUS_OK) return readVectors(reply, texts.size());
+                if (status != EmbeddingService.STATUS_NOT_READY) throw new IOException("embedding service failed");
+            } catch (DeadObjectException e) {
+                connection.drop(binder);
+            } finally {
+                data.recycle();
+                reply.recycle();
+            }
+
+            if (interactive || SystemClock.uptimeMillis() >= deadline) {
+                throw new Unavailable("embedding service not ready for " + modelId);
+            }
+            Thread.sleep(NOT_READY_RETRY_MS);
+        }
+    }
+
+    // The service's model list, side-loaded models included; null while the service is not bound.
+    // Never waits for the binding, so it is safe on the main thread.
+    static List<ModelSpec> listModels(Connection connection) throws Exception {
+        IBinder binder = connection.binder(0L);
+        if (binder == null) return null;
+
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        try {
+            data.writeInterfaceToken(EmbeddingService.DESCRIPTOR);
+            binder.transact(EmbeddingService.TRANSACTION_LIST_MODELS, data, reply, 0);
+            if (reply.readInt() != EmbeddingService.STATUS_OK) throw new IOException("model list failed");
+
+            int count = reply.readInt();
+            List<ModelSpec> models = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                models.add(ModelSpec.remote(reply.readString(), reply.readString(), reply.readInt()));
+            }
+            return models;
+        } catch (DeadObjectException e) {
+            connection.drop(binder);
+            return null;
+        } finally {
+            data.recycle();
+            reply.recycle();
+        }
+    }
+
+    private static float[][] readVectors(Parcel reply, int count) throws Exception {
+        int dim = reply.readInt();
+        boolean[] present = reply.createBooleanArray();
+        float[][] out = new float[count][];
+        if (dim <= 0 || present == null) return out;
+
+        try (SharedMemory shared = SharedMemory.CREATOR.createFromParcel(reply)) {
+            ByteBuffer mapped = shared.mapReadOnly();
+            FloatBuffer in = mapped.order(ByteOrder.nativeOrder()).asFloatBuffer();
+            for (int i = 0; i < Math.min(count, present.length); i++) {
+                if (!present[i]) continue;
+                out[i] = new float[dim];
+                in.position(i * dim);
+                in.get(out[i]);
+            }
+            SharedMemory.unmap(mapped);
+        }
+        return out;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public void close() {
+        // The binding outlives any one model; nothing to release per model.
+    }
+
+    // One binding per reranker, made lazily and kept for the launcher's lifetime; the system
+    // reconnects it when the service process restarts.
+    static final class Connection implements ServiceConnection {
+        private final Context context;
+        private final Object lock = new Object();
+        private IBinder binder;
+        private boolean bound;
+
+        Connection(Context context) {
+            this.context = context.getApplicationContext();
+        }
+
+        // Waits up to waitMs for the binding; 0 never blocks. Must not wait on the main thread,
+        // which is where connection callbacks arrive.
+        IBinder binder(long waitMs) throws InterruptedException {
+            synchronized (lock) {
+                if (!bound) bind();
+                long deadline = SystemClock.uptimeMillis() + waitMs;
+                while (binder == null && bound) {
+                    long left = deadline - SystemClock.uptimeMillis();
+                    if (left <= 0L) break;
+                    lock.wait(left);
+                }
+                return binder;
+            }
+        }
+
+        void drop(IBinder dead) {
+            synchronized (lock) {
+                if (binder == dead) binder = null;
+            }
+        }
+
+        private void bind() {
+            Intent intent = new Intent();
+            intent.setComponent(new ComponentName(MODULE_PACKAGE, SERVICE_CLASS));
+            try {
+                bound = context.bindService(intent, this, Context.BIND_AUTO_CREATE);
+            } catch (Throwable t) {
+                Log.w(TAG, "bind failed", t);
+                bound = false;
+            }
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            synchronized (lock) {
+                binder = service;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            synchronized (lock) {
+                binder = null;
+            }
+        }
+
+        @Override
+        public void onBindingDied(ComponentName name) {
+            synchronized (lock) {
+                binder = null;
+                bound = false;
+                lock.notifyAll();
+            }
+            try {
+                context.unbindService(this);
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+}
@@ -1,65 +1,127 @@
 package be.zvz.sony.launchersearchenhancer.reranker;
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.text.Normalizer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-import ai.onnxruntime.OnnxTensor;
 import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtSession;
 
 public final class SemanticReranker {
 
     private static final String TAG = "SemanticReranker";
-    private static final String CACHE_VERSION = "v2";
+    private static final String CACHE_VERSION = "v4";
+    private static final String VECTOR_SETS_DIR = "semantic_vectors";
+    private static final String[] LEGACY_CACHE_VERSIONS = {"v2", "v3"};
     private static final String MODULE_PACKAGE = "be.zvz.sony.launchersearchenhancer";
 
-    private static final String MODEL_FILE = "model_qint8_arm64.onnx";
-    private static final String TOKENIZER_FILE = "tokenizer.json";
+    private static final String MODEL_FILE = "model.onnx";
+    private static final String TOKENIZER_COMPILED_FILE = "tokenizer.bin";
+    private static final String VERIFIED_PREFIX = "verified-";
+    private static final String EXTERNAL_MODELS_DIR = "semantic_models";
 
-    private static final String ASSET_MODEL = "semantic/model_qint8_arm64.onnx";
-    private static final String ASSET_TOKENIZER = "semantic/tokenizer.json";
+    private static final String PREFS = "semantic_reranker";
+    private static final String PREF_ACTIVE_MODEL = "active_model";
+    private static final String PREF_DIMENSIONS = "embedding_dimensions";
 
-    private static final int MAX_SEQ_LEN = 48;
     private static final int RERANK_TOP_N = 32;
     private static final int EMBED_CACHE_MAX = 1024;
+    // With the model out of process the launcher keeps a small first-level cache; the service
+    // holds the full one.
+    private static final int REMOTE_CACHE_MAX = 256;
+    private static final int INDEX_BATCH = 16;
+    private static final float MAX_SEMANTIC_WEIGHT = 0.35f;
+
+    // Truncated embedding width (Matryoshka prefix). AUTO keeps full width except on
+    // low-RAM devices, where LOW_RAM_DIMENSIONS shrinks the cache and index scans.
+    public static final int DIMENSIONS_FULL = OnnxEmbedder.FULL_DIMENSIONS;
+    public static final int DIMENSIONS_AUTO = -1;
+    private static final int LOW_RAM_DIMENSIONS = 128;
+
+    // Retrieval fallback: only queries this long are embedded, and hits must clear the
+    // absolute floor and stay within RETRIEVAL_MAX_GAP of the best hit.
+    private static final int RETRIEVAL_MIN_QUERY_LEN = 2;
+    private static final float RETRIEVAL_MIN_SIMILARITY = 0.42f;
+    private static final float RETRIEVAL_MAX_GAP = 0.12f;
+
+    // Distilled synonyms are served without the model, so they get a stricter bar than retrieval.
+    private static final int SYNONYM_MAX_APPS = 3;
+    private static final float SYNONYM_MIN_SIMILARITY = 0.5f;
+    private static final float SYNONYM_MAX_GAP = 0.06f;
+
+    private final LongAdder rerankScored = new LongAdder();
+    private final LongAdder rerankSkipped = new LongAdder();
+    private final LongAdder rerankTimeouts = new LongAdder();
+    private final LongAdder rerankUnavailable = new LongAdder();
+
+    // Every inference goes through here so search and background embedding share one model
+    // without background batches delaying keystrokes.
+    private final InferenceScheduler scheduler = new InferenceScheduler();
+
+    private volatile LoadedModel active;
+    private volatile int requestedDimensions = DIMENSIONS_AUTO;
+    private volatile boolean lowRamDevice;
 
-    // LRU cache with synchronized access
-    @SuppressWarnings("serial")
-    private final Map<String, float[]> embedCache = Collections.synchronizedMap(
-            new LinkedHashMap<String, float[]>(256, 0.75f, true) {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
-                    return size() > EMBED_CACHE_MAX;
-                }
-            }
-    );
+    private final Object initLock = new Object();
 
-    private volatile OrtEnvironment env;
-    private volatile OrtSession session;
-    private volatile JsonTokenizer tokenizer;
+    // Remote: the launcher-side instance, which only talks to EmbeddingService. In-process: the
+    // service's own instance (and anything else that wants the session locally).
+    private final boolean remote;
+    private volatile RemoteEmbedder.Connection connection;
+    private final AtomicBoolean warming = new AtomicBoolean();
+
+    // The app vector index lives on the loaded model and is rebuilt off the search thread
+    // when the app set changes; a model swap resets the request so the next search rebuilds it.
+    private volatile long requestedIndexSignature;
+    private final ExecutorService indexWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "XLS-SemanticIndex");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
 
-    private final Object initLock = new Object();
+    public SemanticReranker() {
+        this(false);
+    }
+
+    private SemanticReranker(boolean remote) {
+        this.remote = remote;
+    }
+
+    public static SemanticReranker remote() {
+        return new SemanticReranker(true);
+    }
 
     public static final class Candidate {
         public final Object app;
@@ -77,13 +139,288 @@ public final class SemanticReranker {
         }
     }
 
-    public void rerank(Context context, String query, List<Candidate> candidates) {
+    public static final class IndexEntry {
+        public final String key;
+        public final String title;
+        public final String packageName;
+
+        public IndexEntry(String key, String title, String packageName) {
+            this.key = key;
+            this.title = title == null ? "" : title;
+            this.packageName = packageName == null ? "" : packageName;
+        }
+    }
+
+    public record Hit(String key, float similarity) {
+    }
+
+    // A loaded model plus everything derived from it, so a swap never mixes vectors of two
+    // models. Users hold a reference for the length of one operation; once the model has been
+    // replaced, the last one out closes its session.
+    private static final class LoadedModel {
+        final ModelSpec spec;
+        final Embedder embedder;
+        final EmbeddingCache cache;
+        final ConcurrentHashMap<String, float[][]> vectorSets = new ConcurrentHashMap<>();
+        volatile AppIndex appIndex;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        LoadedModel(ModelSpec spec, Embedder embedder, int cacheSize) {
+            this.spec = spec;
+            this.embedder = embedder;
+            this.cache = new EmbeddingCache(cacheSize);
+        }
+
+        boolean acquire() {
+            while (true) {
+                int n = refs.get();
+                if (n <= 0) return false;
+                if (refs.compareAndSet(n, n + 1)) return true;
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() != 0) return;
+            try {
+                embedder.close();
+            } catch (Throwable t) {
+                Log.w(TAG, "session close failed for " + spec.id(), t);
+            }
+        }
+    }
+
+    private static final class AppIndex {
+        final long signature;
+        final String[] keys;
+        final long[] textKeys;
+        final float[] vectors;
+        final int dim;
+
+        AppIndex(long signature, String[] keys, long[] textKeys, float[] vectors, int dim) {
+            this.signature = signature;
+            this.keys = keys;
+            this.textKeys = textKeys;
+            this.vectors = vectors;
+            this.dim = dim;
+        }
+    }
+
+    public static long appIndexSignature(Collection<String> keys) {
+        long sig = keys.size();
+        for (String key : keys) sig += key.hashCode() * 0x9E3779B97F4A7C15L;
+        return sig;
+    }
+
+    public boolean isAppIndexCurrent(long signature) {
+        LoadedModel m = active;
+        AppIndex index = m == null ? null : m.appIndex;
+        return (index != null && index.signature == signature) || requestedIndexSignature == signature;
+    }
+
+    // Queues a rebuild of the app vector index; vectors of unchanged apps are carried over.
+    public void refreshAppIndex(Context context, long signature, List<IndexEntry> entries) {
+        if (context == null || entries == null || isAppIndexCurrent(signature)) return;
+        requestedIndexSignature = signature;
+        List<IndexEntry> snapshot = new ArrayList<>(entries);
+        indexWorker.execute(() -> {
+            if (requestedIndexSignature != signature) return;
+            LoadedModel m = null;
+            try {
+                m = acquireModel(context);
+                AppIndex built = buildAppIndex(m, signature, snapshot);
+                if (built != null && requestedIndexSignature == signature) {
+                    m.appIndex = built;
+                    Log.i(TAG, "app index: " + built.keys.length + " apps, " + statsSummary());
+                }
+            } catch (Throwable t) {
+                Log.w(TAG, "app index build failed", t);
+                if (requestedIndexSignature == signature) requestedIndexSignature = 0L;
+            } finally {
+                if (m != null) m.release();
+            }
+        });
+    }
+
+    private AppIndex buildAppIndex(LoadedModel m, long signature, List<IndexEntry> entries) throws Exception {
+        AppIndex previous = m.appIndex;
+        Map<String, Integer> reuse = new HashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.keys.length; i++) reuse.put(previous.keys[i], i);
+        }
+
+        int n = entries.size();
+        String[] appTexts = new String[n];
+        long[] textKeys = new long[n];
+        float[][] rows = new float[n][];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            IndexEntry e = entries.get(i);
+            appTexts[i] = OnnxEmbedder.appText(e.title, e.packageName);
+            textKeys[i] = EmbeddingCache.key('a', appTexts[i]);
+            Integer prev = reuse.get(e.key);
+            if (prev != null && previous.textKeys[prev] == textKeys[i]) {
+                rows[i] = new float[previous.dim];
+                System.arraycopy(previous.vectors, prev * previous.dim, rows[i], 0, previous.dim);
+            } else {
+                pending.add(i);
+            }
+        }
+
+        for (int start = 0; start < pending.size(); start += INDEX_BATCH) {
+            if (requestedIndexSignature != signature) return null;
+            int end = Math.min(pending.size(), start + INDEX_BATCH);
+            long[] batchKeys = new long[end - start];
+            List<String> batchTexts = new ArrayList<>(end - start);
+            for (int j = start; j < end; j++) {
+                batchKeys[j - start] = textKeys[pending.get(j)];
+                batchTexts.add(appTexts[pending.get(j)]);
+            }
+            float[][] vecs = embedBatchCached(m, InferenceScheduler.Priority.BACKGROUND, batchKeys, batchTexts);
+            for (int j = start; j < end; j++) rows[pending.get(j)] = vecs[j - start];
+        }
+
+        String[] keys = new String[n];
+        long[] keptTextKeys = new long[n];
+        int count = 0;
+        int dim = 0;
+        for (int i = 0; i < n; i++) {
+            float[] vec = rows[i];
+            if (vec == null || (dim != 0 && vec.length != dim)) continue;
+            dim = vec.length;
+            keys[count] = entries.get(i).key;
+            keptTextKeys[count] = textKeys[i];
+            rows[count] = vec;
+            count++;
+        }
+
+        float[] vectors = new float[count * dim];
+        for (int i = 0; i < count; i++) System.arraycopy(rows[i], 0, vectors, i * dim, dim);
+        return new AppIndex(signature, Arrays.copyOf(keys, count), Arrays.copyOf(keptTextKeys, count), vectors, dim);
+    }
+
+    // Scans the warm app index for the query vector; never embeds apps on the caller's thread,
+    // and returns nothing while the model or index is still loading.
+    public List<Hit> retrieve(Context context, String query, Set<String> excludeKeys, int limit) {
+        if (context == null || limit <= 0) return Collections.emptyList();
+        if (query == null || query.trim().length() < RETRIEVAL_MIN_QUERY_LEN) return Collections.emptyList();
+        LoadedModel m = active;
+        if (m == null || !m.acquire()) return Collections.emptyList();
+
+        try {
+            AppIndex index = m.appIndex;
+            if (index == null || index.dim == 0) return Collections.emptyList();
+            float[] qVec = embedCached(m, InferenceScheduler.Priority.INTERACTIVE, EmbeddingCache.key('q', query), query);
+            if (qVec == null || qVec.length != index.dim) return Collections.emptyList();
+            return nearestApps(index, qVec, excludeKeys, limit, RETRIEVAL_MIN_SIMILARITY, RETRIEVAL_MAX_GAP);
+        } catch (RemoteEmbedder.Unavailable e) {
+            rerankUnavailable.increment();
+            return Collections.emptyList();
+        } catch (Throwable t) {
+            Log.w(TAG, "retrieve failed", t);
+            return Collections.emptyList();
+        } finally {
+            m.release();
+        }
+    }
+
+    // Best `limit` rows of the index for qVec, at least minSimilarity and within maxGap of the best.
+    private static List<Hit> nearestApps(AppIndex index, float[] qVec, Set<String> excludeKeys, int limit,
+                                         float minSimilarity, float maxGap) {
+        int dim = index.dim;
+        float[] vectors = index.vectors;
+        int[] bestIdx = new int[limit];
+        float[] bestSim = new float[limit];
+        int found = 0;
+        for (int row = 0, base = 0; row < index.keys.length; row++, base += dim) {
+            float d = 0f;
+            for (int i = 0; i < dim; i++) d += qVec[i] * vectors[base + i];
+            if (d < minSimilarity) continue;
+            if (found == limit && d <= bestSim[limit - 1]) continue;
+            if (excludeKeys != null && excludeKeys.contains(index.keys[row])) continue;
+
+            int pos = found < limit ? found++ : limit - 1;
+            while (pos > 0 && bestSim[pos - 1] < d) {
+                bestSim[pos] = bestSim[pos - 1];
+                bestIdx[pos] = bestIdx[pos - 1];
+                pos--;
+            }
+            bestSim[pos] = d;
+            bestIdx[pos] = row;
+        }
+
+        List<Hit> hits = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            if (bestSim[0] - bestSim[i] > maxGap) break;
+            hits.add(new Hit(index.keys[bestIdx[i]], bestSim[i]));
+        }
+        return hits;
+    }
+
+    // Distills term -> app neighbours from the app index for the given vocabulary, so stable
+    // associations can be served lexically. Runs on the index worker after any pending index
+    // build; the sink gets null when there is no index for `signature` (yet).
+    public void distillSynonyms(Context context, long signature, List<String> terms,
+                                Consumer<Map<String, List<Hit>>> sink) {
+        if (context == null || terms == null || sink == null) return;
+        List<String> snapshot = new ArrayList<>(terms);
+        indexWorker.execute(() -> {
+            LoadedModel m = null;
+            Map<String, List<Hit>> table = null;
+            try {
+                m = acquireModel(context);
+                AppIndex index = m.appIndex;
+                if (index != null && index.dim > 0 && index.signature == signature) {
+                    table = distill(m, index, snapshot);
+                }
+            } catch (Throwable t) {
+                Log.w(TAG, "synonym distillation failed", t);
+            } finally {
+                if (m != null) m.release();
+            }
+            sink.accept(table);
+        });
+    }
+
+    private Map<String, List<Hit>> distill(LoadedModel m, AppIndex index, List<String> terms) throws Exception {
+        Map<String, List<Hit>> table = new HashMap<>();
+        for (int start = 0; start < terms.size(); start += INDEX_BATCH) {
+            if (active != m) return null;
+            List<String> batch = terms.subList(start, Math.min(terms.size(), start + INDEX_BATCH));
+            long[] keys = new long[batch.size()];
+            for (int i = 0; i < keys.length; i++) keys[i] = EmbeddingCache.key('q', batch.get(i));
+            float[][] vecs = embedBatchCached(m, InferenceScheduler.Priority.BACKGROUND, keys, batch);
+            for (int i = 0; i < vecs.length; i++) {
+                if (vecs[i] == null || vecs[i].length != index.dim) continue;
+                List<Hit> hits = nearestApps(index, vecs[i], null, SYNONYM_MAX_APPS,
+                        SYNONYM_MIN_SIMILARITY, SYNONYM_MAX_GAP);
+                if (!hits.isEmpty()) table.put(batch.get(i), hits);
+            }
+        }
+        return table;
+    }
+
+    // Scores a retrieved app the way rerank would with no lexical match at full semantic weight.
+    public Candidate retrievedCandidate(Object app, String title, String packageName, Hit hit) {
+        Candidate c = new Candidate(app, title, packageName, 0);
+        c.semanticScore = hit.similarity();
+        c.finalScore = MAX_SEMANTIC_WEIGHT * clamp01((hit.similarity() + 1f) * 0.5f);
+        return c;
+    }
+
+    // Reranks the lexical head within budgetMs. Candidates arrive in lexical order, so the
+    // best score any later candidate can reach is bounded by the current one's lexical part
+    // plus the full semantic weight; embedding stops once that bound cannot reach the
+    // visibleCount-th known score, and a leading candidate whose worst case still beats every
+    // later best case is kept in place without inference.
+    public void rerank(Context context, String query, List<Candidate> candidates, int visibleCount, long budgetMs) {
         if (context == null || TextUtils.isEmpty(query) || candidates == null || candidates.size() <= 1) {
             return;
         }
 
+        long deadline = System.nanoTime() + budgetMs * 1_000_000L;
+        LoadedModel m = null;
         try {
-            ensureReady(context);
+            m = acquireModel(context);
 
             int top = Math.min(RERANK_TOP_N, candidates.size());
             List<Candidate> head = new ArrayList<>(candidates.subList(0, top));
@@ -91,22 +428,68 @@ public final class SemanticReranker {
                     ? new ArrayList<>(candidates.subList(top, candidates.size()))
                     : Collections.emptyList();
 
-            float[] qVec = embedCached("q|" + normalize(query), query);
+            float[] qVec = embedCached(m, InferenceScheduler.Priority.INTERACTIVE, EmbeddingCache.key('q', query), query);
             if (qVec == null) return;
 
             float wSemantic = semanticWeight(query);
             float wLexical = 1f - wSemantic;
+            int visible = Math.max(1, Math.min(visibleCount, top));
+
+            // Lower bounds of the best `visible` scores seen so far; the head is the cut-off.
+            PriorityQueue<Float> cutoff = new PriorityQueue<>(visible + 1);
+            boolean[] scored = new boolean[top];
+            boolean pinnedPrefix = true;
+            int timedOutAt = -1;
+            float semanticSum = 0f;
+            int embedded = 0;
+
+            for (int i = 0; i < top; i++) {
+                Candidate c = head.get(i);
+                float lexical = wLexical * lexicalNorm(c);
+                if (cutoff.size() == visible && lexical + wSemantic < cutoff.peek()) break;
+
+                float nextBest = i + 1 < candidates.size()
+                        ? wLexical * lexicalNorm(candidates.get(i + 1)) + wSemantic
+                        : Float.NEGATIVE_INFINITY;
+                if (pinnedPrefix && lexical >= nextBest) {
+                    offerCutoff(cutoff, visible, lexical);
+                    continue;
+                }
+                pinnedPrefix = false;
 
-            for (Candidate c : head) {
-                String appText = buildAppText(c.title, c.packageName);
-                float[] aVec = embedCached("a|" + normalize(appText), appText);
-                c.semanticScore = aVec == null ? 0f : cosineSimilarity(qVec, aVec);
+                if (System.nanoTime() > deadline) {
+                    timedOutAt = i;
+                    break;
+                }
 
-                float lexicalNorm = clamp01(c.lexicalScore / 1300f);
+                String appText = OnnxEmbedder.appText(c.title, c.packageName);
+                float[] aVec = embedCached(m, InferenceScheduler.Priority.INTERACTIVE,
+                        EmbeddingCache.key('a', appText), appText);
+                c.semanticScore = aVec == null ? 0f : cosineSimilarity(qVec, aVec);
                 float semanticNorm = clamp01((c.semanticScore + 1f) * 0.5f);
-                c.finalScore = wLexical * lexicalNorm + wSemantic * semanticNorm;
+                c.finalScore = lexical + wSemantic * semanticNorm;
+                scored[i] = true;
+                semanticSum += semanticNorm;
+                embedded++;
+                offerCutoff(cutoff, visible, c.finalScore);
+            }
+
+            // Unscored candidates get the average semantic share. Pinned and cut-off rows cannot
+            // move past the settled part within their bounds; rows the deadline skipped could, so
+            // they are held to the cutoff instead.
+            float semanticEstimate = embedded > 0 ? semanticSum / embedded : 0.5f;
+            float timedOutCap = cutoff.isEmpty() ? Float.POSITIVE_INFINITY : cutoff.peek();
+            for (int i = 0; i < top; i++) {
+                if (scored[i]) continue;
+                Candidate c = head.get(i);
+                c.finalScore = wLexical * lexicalNorm(c) + wSemantic * semanticEstimate;
+                if (timedOutAt >= 0 && i >= timedOutAt) c.finalScore = Math.min(c.finalScore, timedOutCap);
             }
 
+            rerankScored.add(embedded);
+            rerankSkipped.add(top - embedded);
+            if (timedOutAt >= 0) rerankTimeouts.increment();
+
             head.sort((o1, o2) -> {
                 int f = Float.compare(o2.finalScore, o1.finalScore);
                 if (f != 0) return f;
@@ -118,15 +501,122 @@ public final class SemanticReranker {
             candidates.clear();
             candidates.addAll(head);
             candidates.addAll(tail);
+        } catch (RemoteEmbedder.Unavailable e) {
+            // Service starting or switching models: the lexical order stands.
+            rerankUnavailable.increment();
         } catch (Throwable t) {
             Log.w(TAG, "rerank failed", t);
+        } finally {
+            if (m != null) m.release();
         }
     }
 
+    private static void offerCutoff(PriorityQueue<Float> cutoff, int visible, float score) {
+        cutoff.add(score);
+        if (cutoff.size() > visible) cutoff.poll();
+    }
+
+    private float lexicalNorm(Candidate c) {
+        return clamp01(c.lexicalScore / 1300f);
+    }
+
+    public String statsSummary() {
+        LoadedModel m = active;
+        return "rerank scored=" + rerankScored.sum() + " skipped=" + rerankSkipped.sum()
+                + " timeouts=" + rerankTimeouts.sum() + " unavailable=" + rerankUnavailable.sum()
+                + ", inference " + scheduler.stats()
+                + (m == null ? "" : ", model " + m.spec.id() + " embed cache " + m.cache.stats());
+    }
+
+    // Background priority: callers are workers (auto-foldering) that must not slow down typing.
     public float[] embedForText(Context context, String text) throws Exception {
         if (context == null || TextUtils.isEmpty(text)) return null;
-        ensureReady(context);
-        return embedCached("u|" + normalize(text), text);
+        LoadedModel m = acquireModel(context);
+        try {
+            return embedCached(m, InferenceScheduler.Priority.BACKGROUND, EmbeddingCache.key('u', text), text);
+        } finally {
+            m.release();
+        }
+    }
+
+    // Batched embedForText over one model: rows for the fixed set first (see vectorSet), then one
+    // per text, cache hits first and misses INDEX_BATCH at a time. Rows for empty texts or failed
+    // inferences are null.
+    public float[][] embedForTexts(Context context, String setName, List<String> fixed, List<String> texts)
+            throws Exception {
+        return embedForTexts(context, setName, fixed, texts, null);
+    }
+
+    // As above, asking the gate before each batch of texts; once it declines, the remaining text
+    // rows stay null. The gate may also throw to abandon the call.
+    public float[][] embedForTexts(Context context, String setName, List<String> fixed, List<String> texts,
+                                   BatchGate gate) throws Exception {
+        float[][] out = new float[fixed.size() + texts.size()][];
+        if (context == null || out.length == 0) return out;
+        LoadedModel m = acquireModel(context);
+        try {
+            if (!fixed.isEmpty()) System.arraycopy(vectorSet(context, m, setName, fixed), 0, out, 0, fixed.size());
+            float[][] vecs = embedTexts(m, texts, gate);
+            System.arraycopy(vecs, 0, out, fixed.size(), vecs.length);
+        } finally {
+            m.release();
+        }
+        return out;
+    }
+
+    // Vectors for a fixed text set such as the category prompts: kept with the model in memory and
+    // in a VectorSetFile under files/, so they are inferred once per model rather than per process.
+    private float[][] vectorSet(Context context, LoadedModel m, String name, List<String> texts) throws Exception {
+        long hash = VectorSetFile.textsHash(texts);
+        String memoryKey = name + ":" + hash;
+        float[][] vectors = m.vectorSets.get(memoryKey);
+        if (vectors != null) return vectors;
+
+        String model = m.spec.sha256() != null ? m.spec.sha256() : m.spec.id();
+        int dimensions = m.embedder.dimensions();
+        File file = new File(context.getFilesDir(), VECTOR_SETS_DIR + "/" + m.spec.id() + "-" + name + ".bin");
+        vectors = VectorSetFile.read(file, model, dimensions, hash, texts.size());
+        if (vectors == null) {
+            vectors = embedTexts(m, texts, null);
+            for (float[] v : vectors) {
+                if (v == null) return vectors;
+            }
+            try {
+                VectorSetFile.write(file, model, dimensions, hash, vectors);
+            } catch (Throwable t) {
+                Log.w(TAG, "vector set write failed: " + file, t);
+            }
+        }
+        m.vectorSets.put(memoryKey, vectors);
+        return vectors;
+    }
+
+    // Every text is looked up first, so batches carry only misses and a warm drawer runs few, full
+    // inferences. The gate is asked before each miss batch; a decline leaves only misses unfilled.
+    private float[][] embedTexts(LoadedModel m, List<String> texts, BatchGate gate) throws Exception {
+        float[][] out = new float[texts.size()][];
+        long[] keys = new long[texts.size()];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (TextUtils.isEmpty(texts.get(i))) continue;
+            keys[i] = EmbeddingCache.key('u', texts.get(i));
+            out[i] = m.cache.get(keys[i]);
+            if (out[i] == null) missing.add(i);
+        }
+        int hits = texts.size() - missing.size();
+        for (int start = 0; start < missing.size(); start += INDEX_BATCH) {
+            if (gate != null && !gate.next(hits + start, texts.size())) break;
+            int end = Math.min(missing.size(), start + INDEX_BATCH);
+            long[] batchKeys = new long[end - start];
+            List<String> batch = new ArrayList<>(end - start);
+            for (int j = start; j < end; j++) {
+                batchKeys[j - start] = keys[missing.get(j)];
+                batch.add(texts.get(missing.get(j)));
+            }
+            float[][] vecs = embedBatchCached(m, InferenceScheduler.Priority.BACKGROUND, batchKeys, batch);
+            for (int j = 0; j < vecs.length; j++) out[missing.get(start + j)] = vecs[j];
+        }
+        return out;
     }
 
     public static float cosineSimilarity(float[] a, float[] b) {
@@ -142,537 +632,396 @@ public final class SemanticReranker {
         int len = q == null ? 0 : q.trim().length();
         if (len <= 2) return 0.10f;
         if (len <= 4) return 0.20f;
-        return 0.35f;
-    }
-
-    private String buildAppText(String title, String pkg) {
-        String pkgTokens = pkg == null ? "" : pkg.replace('.', ' ').replace('_', ' ').replace('-', ' ');
-        return (title == null ? "" : title) + " " + pkgTokens;
+        return MAX_SEMANTIC_WEIGHT;
     }
 
-    private float[] embedCached(String key, String text) throws Exception {
-        float[] cached = embedCache.get(key);
+    private float[] embedCached(LoadedModel m, InferenceScheduler.Priority priority, long key, String text)
+            throws Exception {
+        float[] cached = m.cache.get(key);
         if (cached != null) return cached;
 
-        float[] v = embed(text);
+        float[] v = scheduler.run(priority, () -> m.embedder.embed(text, priority));
         if (v != null) {
-            embedCache.put(key, v);
+            m.cache.put(key, v);
         }
         return v;
     }
 
-    private void ensureReady(Context hostContext) throws Exception {
-        if (session != null && tokenizer != null) return;
-
-        synchronized (initLock) {
-            if (session != null && tokenizer != null) return;
-
-            if (!isArm64()) {
-                throw new IllegalStateException("model_qint8_arm64.onnx requires arm64-v8a");
-            }
-
-            File dir = new File(hostContext.getFilesDir(), "semantic_cache_" + CACHE_VERSION);
-            if (!dir.exists() && !dir.mkdirs()) {
-                throw new IllegalStateException("Failed to create cache dir: " + dir.getAbsolutePath());
-            }
-
-            File modelFile = new File(dir, MODEL_FILE);
-            File tokenizerFile = new File(dir, TOKENIZER_FILE);
-
-            Context moduleContext = hostContext.createPackageContext(
-                    MODULE_PACKAGE,
-                    Context.CONTEXT_INCLUDE_CODE | Context.CONTEXT_IGNORE_SECURITY
-            );
-
-            ensureAssetCopied(moduleContext, ASSET_MODEL, modelFile);
-            ensureAssetCopied(moduleContext, ASSET_TOKENIZER, tokenizerFile);
-
-            tokenizer = JsonTokenizer.fromTokenizerJson(tokenizerFile);
-
-            env = OrtEnvironment.getEnvironment();
-            OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
-            opts.setIntraOpNumThreads(1);
-            session = env.createSession(modelFile.getAbsolutePath(), opts);
+    // Cache lookups first, then one scheduled inference for everything missing, so a background
+    // batch is also the unit at which it yields to interactive work.
+    private float[][] embedBatchCached(LoadedModel m, InferenceScheduler.Priority priority, long[] keys,
+                                       List<String> texts) throws Exception {
+        int n = texts.size();
+        float[][] out = new float[n][];
+        int[] missingAt = new int[n];
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out[i] = m.cache.get(keys[i]);
+            if (out[i] != null) continue;
+            missingAt[missing.size()] = i;
+            missing.add(texts.get(i));
         }
-    }
-
-    private boolean isArm64() {
-        for (String abi : Build.SUPPORTED_ABIS) {
-            if ("arm64-v8a".equals(abi)) return true;
+        if (missing.isEmpty()) return out;
+
+        float[][] computed = scheduler.run(priority, () -> m.embedder.embedBatch(missing, priority));
+        for (int j = 0; j < missing.size() && j < computed.length; j++) {
+            float[] v = computed[j];
+            if (v == null) continue;
+            int i = missingAt[j];
+            out[i] = v;
+            m.cache.put(keys[i], v);
         }
-        return false;
+        return out;
     }
 
-    private void ensureAssetCopied(Context moduleContext, String assetPath, File outFile) throws Exception {
-        if (outFile.exists() && outFile.length() > 0) return;
+    // Service side of the out-of-process mode: embeds with the model and width the launcher
+    // asked for, or returns null while that model is still loading or being switched in.
+    // Interactive requests never wait for a load.
+    float[][] embedForRemote(Context context, String modelId, int dimensions,
+                             InferenceScheduler.Priority priority, List<String> texts) throws Exception {
+        if (!modelId.equals(prefs(context).getString(PREF_ACTIVE_MODEL, null)) || requestedDimensions != dimensions) {
+            requestedDimensions = dimensions;
+            setActiveModel(context, modelId);
+        }
 
-        File tmp = new File(outFile.getParentFile(), outFile.getName() + ".tmp");
-        try (InputStream in = moduleContext.getAssets().open(assetPath);
-             FileOutputStream fos = new FileOutputStream(tmp)) {
-            byte[] buf = new byte[8192];
-            int n;
-            while ((n = in.read(buf)) > 0) {
-                fos.write(buf, 0, n);
+        LoadedModel m = active;
+        if (m == null) {
+            if (priority == InferenceScheduler.Priority.INTERACTIVE) {
+                warmUp(context);
+                return null;
             }
-            fos.flush();
+            m = acquireModel(context);
+        } else if (!m.acquire()) {
+            return null;
         }
 
-        if (tmp.length() <= 0) {
-            tmp.delete();
-            throw new IllegalStateException("Asset copy failed: " + assetPath);
+        try {
+            // The launcher may not know the model's native width, so compare resolved widths.
+            if (!m.spec.id().equals(modelId) || m.embedder.dimensions() != resolveDimensions(m.spec)) return null;
+            long[] keys = new long[texts.size()];
+            for (int i = 0; i < keys.length; i++) keys[i] = EmbeddingCache.key('r', texts.get(i));
+            return embedBatchCached(m, priority, keys, texts);
+        } finally {
+            m.release();
         }
+    }
 
-        if (outFile.exists() && !outFile.delete()) {
-            throw new IllegalStateException("Failed deleting old file: " + outFile.getAbsolutePath());
-        }
-        if (!tmp.renameTo(outFile)) {
-            throw new IllegalStateException("Failed to move temp file: " + outFile.getAbsolutePath());
-        }
+    private void warmUp(Context context) {
+        if (!warming.compareAndSet(false, true)) return;
+        indexWorker.execute(() -> {
+            try {
+                acquireModel(context).release();
+            } catch (Throwable t) {
+                Log.w(TAG, "model warm-up failed", t);
+            } finally {
+                warming.set(false);
+            }
+        });
     }
 
-    private float[] embed(String text) throws Exception {
-        if (session == null || tokenizer == null || env == null) return null;
+    // --- Models ---
 
-        JsonTokenizer.Encoded e = tokenizer.encode(text, MAX_SEQ_LEN);
+    public List<ModelSpec> availableModels(Context hostContext) throws Exception {
+        return loadRegistry(hostContext).models();
+    }
 
-        long[][] inputIds = {e.inputIds};
-        long[][] attentionMask = {e.attentionMask};
-        long[][] tokenTypeIds = {new long[MAX_SEQ_LEN]};
+    public String activeModelId(Context hostContext) {
+        LoadedModel m = active;
+        if (m != null) return m.spec.id();
+        return prefs(hostContext).getString(PREF_ACTIVE_MODEL, null);
+    }
 
-        Map<String, OnnxTensor> inputs = new LinkedHashMap<>();
-        try (OnnxTensor tIds = OnnxTensor.createTensor(env, inputIds);
-             OnnxTensor tMask = OnnxTensor.createTensor(env, attentionMask);
-             OnnxTensor tType = OnnxTensor.createTensor(env, tokenTypeIds)) {
+    // Persists the choice and swaps models in the background; searches keep using the current
+    // model until the new one is ready.
+    public void setActiveModel(Context hostContext, String modelId) {
+        prefs(hostContext).edit().putString(PREF_ACTIVE_MODEL, modelId).apply();
+        scheduleReload(hostContext);
+    }
 
-            inputs.put("input_ids", tIds);
-            inputs.put("attention_mask", tMask);
-            if (session.getInputNames().contains("token_type_ids")) {
-                inputs.put("token_type_ids", tType);
-            }
+    // DIMENSIONS_AUTO, DIMENSIONS_FULL or a prefix width. Vectors of different widths must never
+    // be compared, so a width change reloads the model with a fresh cache and index just like a
+    // model swap.
+    public void setEmbeddingDimensions(Context hostContext, int dimensions) {
+        prefs(hostContext).edit().putInt(PREF_DIMENSIONS, dimensions).apply();
+        requestedDimensions = dimensions;
+        scheduleReload(hostContext);
+    }
 
-            try (OrtSession.Result r = session.run(inputs)) {
-                if (r == null || r.size() == 0 || r.get(0) == null) return null;
-                Object out = r.get(0).getValue();
+    public int embeddingDimensions(Context hostContext) {
+        return prefs(hostContext).getInt(PREF_DIMENSIONS, DIMENSIONS_AUTO);
+    }
 
-                if (out instanceof float[][] v) {
-                    if (v.length == 0) return null;
-                    return l2norm(v[0]);
-                }
+    // Names the model and width vectors come from, for callers that keep vectors of their own.
+    public String activeVectorSpace(Context hostContext) {
+        LoadedModel m = active;
+        if (m != null) return m.spec.id() + "@" + m.embedder.dimensions();
+        return activeModelId(hostContext) + "@" + embeddingDimensions(hostContext);
+    }
 
-                if (out instanceof float[][][] tokenEmb) {
-                    float[] pooled = meanPool(tokenEmb[0], e.attentionMask);
-                    return pooled == null ? null : l2norm(pooled);
+    private void scheduleReload(Context hostContext) {
+        indexWorker.execute(() -> {
+            try {
+                LoadedModel previous = active;
+                // Not loaded yet: the first load reads the new settings anyway.
+                if (previous == null) return;
+
+                ModelSpec spec = resolveSpec(hostContext);
+                int dimensions = resolveDimensions(spec);
+                if (spec.equals(previous.spec) && dimensions == previous.embedder.dimensions()) return;
+
+                LoadedModel next = loadModel(hostContext, spec, dimensions);
+                synchronized (initLock) {
+                    active = next;
+                    requestedIndexSignature = 0L;
                 }
+                previous.release();
+                Log.i(TAG, "switched model " + previous.spec.id() + " -> " + spec.id() + " dims=" + dimensions);
+            } catch (Throwable t) {
+                Log.w(TAG, "model switch failed", t);
             }
-        }
-
-        return null;
+        });
     }
 
-    private float[] meanPool(float[][] tokenEmb, long[] mask) {
-        if (tokenEmb == null || tokenEmb.length == 0 || tokenEmb[0] == null) return null;
-        int dim = tokenEmb[0].length;
-        float[] sum = new float[dim];
-        float count = 0f;
-
-        int len = Math.min(tokenEmb.length, mask.length);
-        for (int i = 0; i < len; i++) {
-            if (mask[i] == 0 || tokenEmb[i] == null) continue;
-            for (int d = 0; d < dim; d++) sum[d] += tokenEmb[i][d];
-            count += 1f;
+    private LoadedModel acquireModel(Context hostContext) throws Exception {
+        while (true) {
+            LoadedModel m = active;
+            if (m == null) {
+                ensureReady(hostContext);
+                continue;
+            }
+            if (m.acquire()) return m;
         }
-
-        if (count <= 0f) return null;
-        for (int d = 0; d < dim; d++) sum[d] /= count;
-        return sum;
     }
 
-    private float[] l2norm(float[] v) {
-        if (v == null) return null;
-        double s = 0d;
-        for (float x : v) s += x * x;
-        if (s <= 0d) return v;
-        float inv = (float) (1d / Math.sqrt(s));
-        float[] out = new float[v.length];
-        for (int i = 0; i < v.length; i++) out[i] = v[i] * inv;
-        return out;
+    private int resolveDimensions(ModelSpec spec) {
+        int requested = requestedDimensions;
+        if (requested == DIMENSIONS_AUTO) requested = lowRamDevice ? LOW_RAM_DIMENSIONS : DIMENSIONS_FULL;
+        if (spec.dimensions() > 0 && requested >= spec.dimensions()) return DIMENSIONS_FULL;
+        return requested;
     }
 
-    private float clamp01(float v) {
-        if (v < 0f) return 0f;
-        return Math.min(v, 1f);
+    private ModelSpec resolveSpec(Context hostContext) throws Exception {
+        String id = prefs(hostContext).getString(PREF_ACTIVE_MODEL, null);
+        ModelRegistry registry = remote ? serviceRegistry(hostContext) : null;
+        if (registry == null) {
+            registry = localRegistry(hostContext);
+            // Until the service answers, a choice the bundle lacks may still be side-loaded there,
+            // so pass it on by id instead of switching the service back to the default.
+            if (remote && id != null && registry.find(id) == null) return ModelSpec.remote(id, id, 0);
+        }
+        ModelSpec spec = registry.find(id);
+        return spec != null ? spec : registry.defaultModel();
     }
 
-    private String normalize(String s) {
-        if (s == null) return "";
-        return Normalizer.normalize(s, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT).trim();
+    private ModelRegistry loadRegistry(Context hostContext) throws Exception {
+        ModelRegistry registry = remote ? serviceRegistry(hostContext) : null;
+        return registry != null ? registry : localRegistry(hostContext);
     }
 
-    // --- Tokenizer ---
-
-    private static final class JsonTokenizer {
-
-        interface Impl {
-            Encoded encode(String text, int maxLen);
-        }
-
-        private final Impl impl;
+    // Side-loaded models sit in the data dir of whichever process runs the session, which the
+    // launcher cannot see in remote mode; there it lists the bundled models only.
+    private ModelRegistry localRegistry(Context hostContext) throws Exception {
+        Context moduleContext = moduleContext(hostContext);
+        File externalRoot = remote ? null : new File(hostContext.getFilesDir(), EXTERNAL_MODELS_DIR);
+        return ModelRegistry.load(() -> moduleContext.getAssets().open(ModelRegistry.BUNDLED_MANIFEST),
+                externalRoot, Arrays.asList(Build.SUPPORTED_ABIS));
+    }
 
-        private JsonTokenizer(Impl impl) {
-            this.impl = impl;
+    // Remote mode: the service's registry, the only one that includes side-loaded models, or null
+    // while the service is not bound.
+    private ModelRegistry serviceRegistry(Context hostContext) {
+        try {
+            return ModelRegistry.of(RemoteEmbedder.listModels(connection(hostContext)));
+        } catch (Throwable t) {
+            Log.w(TAG, "model list from service failed", t);
+            return null;
         }
+    }
 
-        static JsonTokenizer fromTokenizerJson(File tokenizerJsonFile) throws Exception {
-            String json = readAll(tokenizerJsonFile);
-            JSONObject root = new JSONObject(json);
-
-            JSONObject model = root.getJSONObject("model");
-            String modelType = model.optString("type", "");
-
-            boolean lowercase = false;
-            JSONObject normalizer = root.optJSONObject("normalizer");
-            if (normalizer != null) {
-                lowercase = containsLowercaseFlag(normalizer);
-            }
+    private SharedPreferences prefs(Context hostContext) {
+        return hostContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
 
-            if ("WordPiece".equalsIgnoreCase(modelType)) {
-                return new JsonTokenizer(new WordPieceImpl(root, model, lowercase));
-            }
+    private Context moduleContext(Context hostContext) throws Exception {
+        return hostContext.createPackageContext(
+                MODULE_PACKAGE,
+                Context.CONTEXT_INCLUDE_CODE | Context.CONTEXT_IGNORE_SECURITY
+        );
+    }
 
-            if ("Unigram".equalsIgnoreCase(modelType)) {
-                return new JsonTokenizer(new UnigramImpl(root, model, lowercase));
-            }
+    private void ensureReady(Context hostContext) throws Exception {
+        if (active != null) return;
 
-            throw new IllegalStateException("Unsupported tokenizer model.type=" + modelType);
+        synchronized (initLock) {
+            if (active != null) return;
+
+            ActivityManager am = (ActivityManager) hostContext.getSystemService(Context.ACTIVITY_SERVICE);
+            lowRamDevice = am != null && am.isLowRamDevice();
+            // The service never has this pref; it takes the width each request carries.
+            requestedDimensions = prefs(hostContext).getInt(PREF_DIMENSIONS, requestedDimensions);
+            ModelSpec spec = resolveSpec(hostContext);
+            active = loadModel(hostContext, spec, resolveDimensions(spec));
         }
+    }
 
-        Encoded encode(String text, int maxLen) {
-            return impl.encode(text, maxLen);
+    private LoadedModel loadModel(Context hostContext, ModelSpec spec, int dimensions) throws Exception {
+        if (remote) {
+            return new LoadedModel(spec, new RemoteEmbedder(connection(hostContext), spec.id(), dimensions),
+                    REMOTE_CACHE_MAX);
         }
 
-        private static String readAll(File f) throws Exception {
-            StringBuilder sb = new StringBuilder((int) Math.max(1024, f.length()));
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
-                char[] buf = new char[8192];
-                int n;
-                while ((n = br.read(buf)) > 0) {
-                    sb.append(buf, 0, n);
-                }
-            }
-            return sb.toString();
+        deleteLegacyCaches(hostContext.getFilesDir());
+        File dir = new File(hostContext.getFilesDir(), "semantic_cache_" + CACHE_VERSION + "/" + spec.id());
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("Failed to create cache dir: " + dir.getAbsolutePath());
         }
 
-        private static boolean containsLowercaseFlag(JSONObject obj) {
-            if (obj == null) return false;
-            if (obj.has("lowercase") && obj.optBoolean("lowercase", false)) return true;
-
-            String type = obj.optString("type", "");
-            if ("Sequence".equalsIgnoreCase(type)) {
-                JSONArray arr = obj.optJSONArray("normalizers");
-                if (arr != null) {
-                    for (int i = 0; i < arr.length(); i++) {
-                        JSONObject n = arr.optJSONObject(i);
-                        if (containsLowercaseFlag(n)) return true;
-                    }
-                }
-            }
-            return false;
-        }
-
-        private static int pickSpecialId(JSONObject root, Map<String, Integer> vocab, String primary, String alt, int fallback) {
-            Integer fromVocab = vocab.get(primary);
-            if (fromVocab != null) return fromVocab;
-            Integer fromAlt = vocab.get(alt);
-            if (fromAlt != null) return fromAlt;
-
-            JSONArray added = root.optJSONArray("added_tokens");
-            if (added != null) {
-                for (int i = 0; i < added.length(); i++) {
-                    JSONObject o = added.optJSONObject(i);
-                    if (o == null) continue;
-                    String content = o.optString("content", "");
-                    int id = o.optInt("id", -1);
-                    if (id >= 0 && (primary.equals(content) || alt.equals(content))) {
-                        return id;
-                    }
-                }
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
+        opts.setIntraOpNumThreads(1);
+        JsonTokenizer tokenizer;
+        OrtSession session;
+
+        if (spec.bundled()) {
+            Context moduleContext = moduleContext(hostContext);
+            ModuleAsset modelAsset = ModuleAsset.locate(moduleContext, spec.model());
+            ModuleAsset tokenizerAsset = ModuleAsset.locate(moduleContext, spec.tokenizer());
+            tokenizer = JsonTokenizer.load(tokenizerAsset::open, tokenizerAsset.stamp,
+                    new File(dir, TOKENIZER_COMPILED_FILE));
+
+            if (modelAsset.stored) {
+                // Uncompressed in the APK: hand ORT the mapped bytes, no copy on disk.
+                MappedByteBuffer mapped = modelAsset.map();
+                verifyChecksum(spec, dir, modelAsset.stamp, () -> sha256(mapped.duplicate()));
+                session = env.createSession(mapped, opts);
+            } else {
+                File modelFile = new File(dir, modelAsset.stampHex() + "-" + MODEL_FILE);
+                ensureAssetCopied(modelAsset, modelFile);
+                verifyChecksum(spec, dir, modelAsset.stamp, () -> sha256(modelFile));
+                session = env.createSession(modelFile.getAbsolutePath(), opts);
             }
-            return fallback;
+        } else {
+            File modelFile = new File(spec.baseDir(), spec.model());
+            File tokenizerFile = new File(spec.baseDir(), spec.tokenizer());
+            tokenizer = JsonTokenizer.load(() -> new FileInputStream(tokenizerFile), fileStamp(tokenizerFile),
+                    new File(dir, TOKENIZER_COMPILED_FILE));
+            verifyChecksum(spec, dir, fileStamp(modelFile), () -> sha256(modelFile));
+            session = env.createSession(modelFile.getAbsolutePath(), opts);
         }
 
-        private static String normalizeText(String s, boolean lowercase) {
-            if (s == null) return "";
-            String out = Normalizer.normalize(s, Normalizer.Form.NFKC).trim();
-            if (lowercase) out = out.toLowerCase(Locale.ROOT);
-            return out;
-        }
+        return new LoadedModel(spec, Embedder.local(new OnnxEmbedder(env, session, tokenizer, spec.maxLength(),
+                spec.pooling(), dimensions)), EMBED_CACHE_MAX);
+    }
 
-        private static void fill(List<Integer> ids, long[] inputIds, long[] attentionMask, int maxLen, int padId) {
-            int n = Math.min(ids.size(), maxLen);
-            for (int i = 0; i < n; i++) {
-                inputIds[i] = ids.get(i);
-                attentionMask[i] = 1;
-            }
-            for (int i = n; i < maxLen; i++) {
-                inputIds[i] = padId;
-                attentionMask[i] = 0;
+    private RemoteEmbedder.Connection connection(Context hostContext) {
+        RemoteEmbedder.Connection c = connection;
+        if (c == null) {
+            synchronized (initLock) {
+                c = connection;
+                if (c == null) connection = c = new RemoteEmbedder.Connection(hostContext);
             }
         }
+        return c;
+    }
 
-        record Encoded(long[] inputIds, long[] attentionMask) {}
-
-        // --- WordPiece ---
-
-        private static final class WordPieceImpl implements Impl {
-            private final Map<String, Integer> vocab;
-            private final int clsId, sepId, unkId, padId;
-            private final boolean lowercase;
-            private final int maxInputCharsPerWord;
-
-            WordPieceImpl(JSONObject root, JSONObject model, boolean lowercase) throws Exception {
-                JSONObject vocabObj = model.getJSONObject("vocab");
-                Map<String, Integer> v = new HashMap<>(vocabObj.length() * 2);
-                JSONArray names = vocabObj.names();
-                if (names == null) throw new IllegalStateException("tokenizer vocab empty");
-                for (int i = 0; i < names.length(); i++) {
-                    String token = names.getString(i);
-                    v.put(token, vocabObj.getInt(token));
-                }
-                this.vocab = v;
-                this.lowercase = lowercase;
-                this.maxInputCharsPerWord = model.optInt("max_input_chars_per_word", 100);
-
-                String unkToken = model.optString("unk_token", "[UNK]");
-                this.clsId = pickSpecialId(root, vocab, "[CLS]", "<s>", 101);
-                this.sepId = pickSpecialId(root, vocab, "[SEP]", "</s>", 102);
-                this.padId = pickSpecialId(root, vocab, "[PAD]", "<pad>", 0);
-                this.unkId = pickSpecialId(root, vocab, unkToken, "<unk>", 100);
-            }
-
-            @Override
-            public Encoded encode(String text, int maxLen) {
-                long[] inputIds = new long[maxLen];
-                long[] attentionMask = new long[maxLen];
-
-                List<Integer> ids = new ArrayList<>(maxLen);
-                ids.add(clsId);
-
-                String norm = normalizeText(text, lowercase);
-                for (String tok : basicTokenize(norm)) {
-                    List<Integer> wp = wordPiece(tok);
-                    for (Integer id : wp) {
-                        if (ids.size() >= maxLen - 1) break;
-                        ids.add(id);
-                    }
-                    if (ids.size() >= maxLen - 1) break;
-                }
-
-                ids.add(sepId);
-                fill(ids, inputIds, attentionMask, maxLen, padId);
-                return new Encoded(inputIds, attentionMask);
-            }
-
-            private List<String> basicTokenize(String s) {
-                List<String> out = new ArrayList<>();
-                StringBuilder cur = new StringBuilder();
-                for (int i = 0; i < s.length(); i++) {
-                    char c = s.charAt(i);
-                    if (Character.isWhitespace(c)) {
-                        flush(cur, out);
-                    } else if (isDelimiter(c)) {
-                        flush(cur, out);
-                        out.add(String.valueOf(c));
-                    } else {
-                        cur.append(c);
-                    }
-                }
-                flush(cur, out);
-                return out;
-            }
-
-            private void flush(StringBuilder cur, List<String> out) {
-                if (cur.length() > 0) {
-                    out.add(cur.toString());
-                    cur.setLength(0);
-                }
-            }
-
-            private boolean isDelimiter(char c) {
-                return Character.isISOControl(c) || Character.isSpaceChar(c)
-                        || ".,!?;:()[]{}\"'`~@#$%^&*+-=/\\|_<>".indexOf(c) >= 0;
-            }
+    public interface BatchGate {
+        // done texts of total so far; false stops before the next batch.
+        boolean next(int done, int total) throws Exception;
+    }
 
-            private List<Integer> wordPiece(String token) {
-                if (token.isEmpty()) return Collections.emptyList();
-                if (token.length() > maxInputCharsPerWord) return Collections.singletonList(unkId);
-
-                List<Integer> ids = new ArrayList<>();
-                int start = 0;
-                boolean bad = false;
-
-                while (start < token.length()) {
-                    int end = token.length();
-                    Integer curId = null;
-
-                    while (start < end) {
-                        String sub = token.substring(start, end);
-                        if (start > 0) sub = "##" + sub;
-                        Integer id = vocab.get(sub);
-                        if (id != null) {
-                            curId = id;
-                            break;
-                        }
-                        end--;
-                    }
-
-                    if (curId == null) {
-                        bad = true;
-                        break;
-                    }
-
-                    ids.add(curId);
-                    start = end;
-                }
+    private interface Digest {
+        String compute() throws Exception;
+    }
 
-                if (bad) {
-                    ids.clear();
-                    ids.add(unkId);
-                }
+    // Hashes a model once per stamp; a marker file in the model's cache dir records the pass.
+    private void verifyChecksum(ModelSpec spec, File dir, long stamp, Digest digest) throws Exception {
+        if (TextUtils.isEmpty(spec.sha256())) return;
+        File marker = new File(dir, VERIFIED_PREFIX + Long.toHexString(stamp));
+        if (marker.exists()) return;
 
-                return ids;
-            }
+        String actual = digest.compute();
+        if (!spec.sha256().equals(actual)) {
+            throw new IllegalStateException("checksum mismatch for " + spec.id() + ": " + actual);
         }
 
-        // --- Unigram ---
-
-        private static final class UnigramImpl implements Impl {
-            private static final char SPIECE_WS = '\u2581';
-
-            private final Map<String, Integer> pieceToId;
-            private final Map<String, Float> pieceScore;
-            private final int clsId, sepId, unkId, padId;
-            private final boolean lowercase;
-            private final int maxPieceLen;
+        File[] stale = dir.listFiles((d, name) -> name.startsWith(VERIFIED_PREFIX));
+        if (stale != null) {
+            for (File f : stale) f.delete();
+        }
+        marker.createNewFile();
+    }
 
-            UnigramImpl(JSONObject root, JSONObject model, boolean lowercase) throws Exception {
-                JSONArray vocabArr = model.getJSONArray("vocab");
-                this.pieceToId = new HashMap<>(vocabArr.length() * 2);
-                this.pieceScore = new HashMap<>(vocabArr.length() * 2);
-                int maxLen = 1;
+    private static String sha256(ByteBuffer bytes) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(bytes);
+        return hex(md.digest());
+    }
 
-                for (int i = 0; i < vocabArr.length(); i++) {
-                    JSONArray item = vocabArr.getJSONArray(i);
-                    String piece = item.getString(0);
-                    float score = (float) item.getDouble(1);
-                    pieceToId.put(piece, i);
-                    pieceScore.put(piece, score);
-                    if (piece.length() > maxLen) maxLen = piece.length();
-                }
-                this.maxPieceLen = maxLen;
-                this.lowercase = lowercase;
-
-                int unkIdxFromModel = model.optInt("unk_id", -1);
-                this.unkId = unkIdxFromModel >= 0 ? unkIdxFromModel : pickSpecialId(root, pieceToId, "[UNK]", "<unk>", 0);
-                this.clsId = pickSpecialId(root, pieceToId, "[CLS]", "<s>", 1);
-                this.sepId = pickSpecialId(root, pieceToId, "[SEP]", "</s>", 2);
-                this.padId = pickSpecialId(root, pieceToId, "[PAD]", "<pad>", 0);
-            }
+    private static String sha256(File file) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+        }
+        return hex(md.digest());
+    }
 
-            @Override
-            public Encoded encode(String text, int maxLen) {
-                long[] inputIds = new long[maxLen];
-                long[] attentionMask = new long[maxLen];
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
 
-                List<Integer> ids = new ArrayList<>(maxLen);
-                ids.add(clsId);
+    private static long fileStamp(File file) {
+        return (file.length() << 32) ^ file.lastModified();
+    }
 
-                String norm = normalizeText(text, lowercase);
-                String sp = toSentencePieceLike(norm);
-                List<Integer> toks = unigramTokenize(sp);
+    private void deleteLegacyCaches(File filesDir) {
+        for (String version : LEGACY_CACHE_VERSIONS) {
+            File legacy = new File(filesDir, "semantic_cache_" + version);
+            File[] files = legacy.listFiles();
+            if (files == null) continue;
+            for (File f : files) f.delete();
+            legacy.delete();
+        }
+    }
 
-                for (Integer id : toks) {
-                    if (ids.size() >= maxLen - 1) break;
-                    ids.add(id);
-                }
+    // Fallback for builds that compress the model; the copy is named by its stamp so updates are picked up.
+    private void ensureAssetCopied(ModuleAsset asset, File outFile) throws Exception {
+        if (outFile.exists() && outFile.length() > 0) return;
 
-                ids.add(sepId);
-                fill(ids, inputIds, attentionMask, maxLen, padId);
-                return new Encoded(inputIds, attentionMask);
-            }
+        File[] stale = outFile.getParentFile().listFiles((d, name) -> name.endsWith("-" + MODEL_FILE));
+        if (stale != null) {
+            for (File f : stale) f.delete();
+        }
 
-            private String toSentencePieceLike(String s) {
-                if (TextUtils.isEmpty(s)) return "";
-                String collapsed = s.replaceAll("\\s+", " ").trim();
-                if (collapsed.isEmpty()) return "";
-                return SPIECE_WS + collapsed.replace(' ', SPIECE_WS);
+        File tmp = new File(outFile.getParentFile(), outFile.getName() + ".tmp");
+        try (InputStream in = asset.open();
+             FileOutputStream fos = new FileOutputStream(tmp)) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                fos.write(buf, 0, n);
             }
+            fos.flush();
+        }
 
-            private List<Integer> unigramTokenize(String input) {
-                if (input.isEmpty()) return Collections.emptyList();
-
-                int n = input.length();
-                float[] best = new float[n + 1];
-                int[] prev = new int[n + 1];
-                String[] pieceAt = new String[n + 1];
-
-                for (int i = 0; i <= n; i++) {
-                    best[i] = Float.NEGATIVE_INFINITY;
-                    prev[i] = -1;
-                }
-                best[0] = 0f;
-
-                for (int i = 0; i < n; i++) {
-                    if (best[i] == Float.NEGATIVE_INFINITY) continue;
-
-                    int endMax = Math.min(n, i + maxPieceLen);
-                    boolean matched = false;
-
-                    for (int j = i + 1; j <= endMax; j++) {
-                        String sub = input.substring(i, j);
-                        Integer id = pieceToId.get(sub);
-                        if (id == null) continue;
-                        matched = true;
-                        float score = pieceScore.getOrDefault(sub, -10f);
-                        float cand = best[i] + score;
-                        if (cand > best[j]) {
-                            best[j] = cand;
-                            prev[j] = i;
-                            pieceAt[j] = sub;
-                        }
-                    }
-
-                    if (!matched) {
-                        int j = i + 1;
-                        float cand = best[i] - 100f;
-                        if (cand > best[j]) {
-                            best[j] = cand;
-                            prev[j] = i;
-                            pieceAt[j] = null;
-                        }
-                    }
-                }
+        if (tmp.length() <= 0) {
+            tmp.delete();
+            throw new IllegalStateException("Asset copy failed: " + asset.assetPath);
+        }
 
-                ArrayList<Integer> rev = new ArrayList<>();
-                int pos = n;
-                while (pos > 0) {
-                    int p = prev[pos];
-                    if (p < 0) {
-                        rev.add(unkId);
-                        pos--;
-                        continue;
-                    }
-                    String piece = pieceAt[pos];
-                    if (piece == null) {
-                        rev.add(unkId);
-                    } else {
-                        Integer id = pieceToId.get(piece);
-                        rev.add(id == null ? unkId : id);
-                    }
-                    pos = p;
-                }
-                Collections.reverse(rev);
-                return rev;
-            }
+        if (outFile.exists() && !outFile.delete()) {
+            throw new IllegalStateException("Failed deleting old file: " + outFile.getAbsolutePath());
         }
+        if (!tmp.renameTo(outFile)) {
+            throw new IllegalStateException("Failed to move temp file: " + outFile.getAbsolutePath());
+        }
+    }
+
+    private float clamp01(float v) {
+        if (v < 0f) return 0f;
+        return Math.min(v, 1f);
     }
 }
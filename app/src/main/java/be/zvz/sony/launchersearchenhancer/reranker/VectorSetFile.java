@@ -0,0 +1,90 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+// Precomputed vectors for a fixed text set, keyed by the model that produced them (sha256 or
+// id), the requested width and a hash of the texts. A file for any other model, width or text
+// set reads as absent, so a model change or prompt edit recomputes it. Loaded with one read.
+final class VectorSetFile {
+
+    private static final int MAGIC = 0x584C5356; // "XLSV"
+    private static final int VERSION = 1;
+
+    private VectorSetFile() {
+    }
+
+    static long textsHash(List<String> texts) {
+        long h = 0xCBF29CE484222325L;
+        for (String text : texts) {
+            for (byte b : text.getBytes(StandardCharsets.UTF_8)) h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+            h = (h ^ 0xFF) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    // The stored vectors, or null when the file is missing, stale or damaged.
+    static float[][] read(File file, String model, int dimensions, long textsHash, int count) {
+        if (!file.isFile()) return null;
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) return null;
+            if (!header.readUTF().equals(model) || header.readInt() != dimensions) return null;
+            if (header.readLong() != textsHash || header.readInt() != count) return null;
+            int length = header.readInt();
+            int offset = bytes.length - header.available();
+            if (length <= 0 || bytes.length - offset != (long) count * length * Float.BYTES) return null;
+
+            FloatBuffer in = ByteBuffer.wrap(bytes, offset, bytes.length - offset)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            float[][] out = new float[count][length];
+            for (float[] v : out) in.get(v);
+            return out;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Written to a temp file and renamed, so readers never see a partial set.
+    static void write(File file, String model, int dimensions, long textsHash, float[][] vectors) throws IOException {
+        int length = vectors[0].length;
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(model);
+        out.writeInt(dimensions);
+        out.writeLong(textsHash);
+        out.writeInt(vectors.length);
+        out.writeInt(length);
+        out.flush();
+
+        ByteBuffer body = ByteBuffer.allocate(vectors.length * length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float[] v : vectors) {
+            if (v.length != length) throw new IOException("ragged vector set");
+            body.asFloatBuffer().put(v);
+            body.position(body.position() + length * Float.BYTES);
+        }
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            header.writeTo(fos);
+            fos.write(body.array());
+        }
+        if (!tmp.renameTo(file)) throw new IOException("rename failed for " + file);
+    }
+}
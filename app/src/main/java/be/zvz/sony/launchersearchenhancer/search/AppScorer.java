@@ -2,7 +2,9 @@ package be.zvz.sony.launchersearchenhancer.search;
 
 import android.text.TextUtils;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -25,6 +27,7 @@ public final class AppScorer {
     private static final int SCORE_PKG_EXACT = 620;
     private static final int SCORE_PKG_PREFIX = 490;
     private static final int SCORE_PKG_CONTAINS = 330;
+    private static final int SCORE_SYNONYM = 320;
 
     private static final Set<String> PACKAGE_STOPWORDS = Set.of(
             "com", "org", "net", "android", "launcher", "mobile", "app", "apps",
@@ -34,6 +37,13 @@ public final class AppScorer {
     private static final Pattern WORD_SPLIT = Pattern.compile("[\\s\\-_.()\\[\\]/・]+");
     public static final Pattern PKG_SPLIT = Pattern.compile("[._\\-]+");
 
+    // Best lexical score over every form of the query.
+    public static int scoreQuery(Collection<String> queryVariants, AppForms f) {
+        int best = 0;
+        for (String q : queryVariants) best = Math.max(best, scoreWithForms(q, f));
+        return best;
+    }
+
     public static int scoreWithForms(String q, AppForms f) {
         if (TextUtils.isEmpty(q)) return 0;
         int best = 0;
@@ -52,6 +62,15 @@ public final class AppScorer {
         return best;
     }
 
+    // synonymHits comes from one SynonymIndex.lookup per search; the weight is the distilled
+    // term/app similarity. SCORE_SYNONYM stays under SCORE_PKG_CONTAINS, so a synonym never
+    // outranks a real substring or package match.
+    public static int scoreSynonym(Map<String, Float> synonymHits, String appKey) {
+        if (synonymHits == null || synonymHits.isEmpty() || appKey == null) return 0;
+        Float weight = synonymHits.get(appKey);
+        return weight == null ? 0 : (int) (SCORE_SYNONYM * weight);
+    }
+
     static int scoreBasic(String q, String target, ScoreTier tier) {
         if (TextUtils.isEmpty(target)) return 0;
         if (target.equals(q)) return tier.exact;
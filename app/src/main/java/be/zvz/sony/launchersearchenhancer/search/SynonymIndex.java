@@ -0,0 +1,108 @@
+package be.zvz.sony.launchersearchenhancer.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Query term -> app associations distilled from the embedding model in the background, so
+// stable semantic matches ("camera" -> Gallery, "지도" -> Maps) are answered lexically with no
+// inference. Terms are sorted for prefix lookups; each term's apps are a slice of flat
+// ordinal/weight arrays.
+public final class SynonymIndex {
+
+    public static final SynonymIndex EMPTY = new Builder().build();
+
+    private static final int MIN_PREFIX_LEN = 3;
+    private static final float PREFIX_WEIGHT = 0.75f;
+
+    private final String[] terms;
+    private final int[] offsets;
+    private final int[] apps;
+    private final float[] weights;
+    private final String[] appKeys;
+
+    private SynonymIndex(String[] terms, int[] offsets, int[] apps, float[] weights, String[] appKeys) {
+        this.terms = terms;
+        this.offsets = offsets;
+        this.apps = apps;
+        this.weights = weights;
+        this.appKeys = appKeys;
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    // App key -> best weight over every query form. A form that names a term exactly counts in
+    // full; one that is a prefix of longer terms (still typing) counts at PREFIX_WEIGHT.
+    public Map<String, Float> lookup(Collection<String> queries) {
+        if (terms.length == 0 || queries == null || queries.isEmpty()) return Map.of();
+        Map<String, Float> out = new HashMap<>();
+        for (String q : queries) {
+            if (q == null || q.isEmpty()) continue;
+            int i = Arrays.binarySearch(terms, q);
+            if (i >= 0) {
+                collect(i, 1f, out);
+                i++;
+            } else {
+                i = -i - 1;
+            }
+            if (q.length() < MIN_PREFIX_LEN) continue;
+            for (; i < terms.length && terms[i].startsWith(q); i++) collect(i, PREFIX_WEIGHT, out);
+        }
+        return out;
+    }
+
+    private void collect(int term, float factor, Map<String, Float> out) {
+        for (int j = offsets[term]; j < offsets[term + 1]; j++) {
+            out.merge(appKeys[apps[j]], weights[j] * factor, Math::max);
+        }
+    }
+
+    public static final class Builder {
+        private final TreeMap<String, List<Entry>> byTerm = new TreeMap<>();
+
+        public Builder add(String term, String appKey, float weight) {
+            if (term == null || term.isEmpty() || appKey == null || weight <= 0f) return this;
+            byTerm.computeIfAbsent(term, k -> new ArrayList<>()).add(new Entry(appKey, weight));
+            return this;
+        }
+
+        public SynonymIndex build() {
+            Map<String, Integer> ordinals = new HashMap<>();
+            List<String> keys = new ArrayList<>();
+            String[] terms = byTerm.keySet().toArray(new String[0]);
+            int[] offsets = new int[terms.length + 1];
+            int total = 0;
+            for (List<Entry> list : byTerm.values()) total += list.size();
+            int[] apps = new int[total];
+            float[] weights = new float[total];
+
+            int t = 0;
+            int j = 0;
+            for (List<Entry> list : byTerm.values()) {
+                offsets[t++] = j;
+                for (Entry entry : list) {
+                    Integer ordinal = ordinals.get(entry.appKey);
+                    if (ordinal == null) {
+                        ordinal = keys.size();
+                        ordinals.put(entry.appKey, ordinal);
+                        keys.add(entry.appKey);
+                    }
+                    apps[j] = ordinal;
+                    weights[j] = entry.weight;
+                    j++;
+                }
+            }
+            offsets[t] = j;
+            return new SynonymIndex(terms, offsets, apps, weights, keys.toArray(new String[0]));
+        }
+
+        private record Entry(String appKey, float weight) {
+        }
+    }
+}
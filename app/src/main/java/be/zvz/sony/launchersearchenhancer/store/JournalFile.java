@@ -0,0 +1,213 @@
+package be.zvz.sony.launchersearchenhancer.store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Binary format of the search journal, shared with the host replay tool. A file is a header and
+// a run of events; times are varint deltas and component names are interned per file, so a
+// keystroke with five results costs a few dozen bytes. Android-free on purpose.
+public final class JournalFile {
+
+    public static final byte APPS = 1;
+    public static final byte QUERY = 2;
+    public static final byte CLICK = 3;
+    public static final byte CLEAR = 4;
+
+    private static final int MAGIC = 0x584C534A; // "XLSJ"
+    private static final int VERSION = 1;
+
+    private JournalFile() {
+    }
+
+    // One journal event. `text` is the raw query (QUERY) or the clicked component (CLICK);
+    // `value` is the search latency in microseconds (QUERY) or the app-set signature (APPS);
+    // `keys` are the shown results (QUERY) or the catalog (APPS, with titles and packages).
+    public record Event(byte type, long time, int session, String text, long value,
+                        String[] keys, String[] titles, String[] packages) {
+
+        public static Event apps(long time, long signature, String[] keys, String[] titles, String[] packages) {
+            return new Event(APPS, time, 0, null, signature, keys, titles, packages);
+        }
+
+        public static Event query(long time, int session, String rawQuery, long latencyMicros, String[] results) {
+            return new Event(QUERY, time, session, rawQuery, latencyMicros, results, null, null);
+        }
+
+        public static Event click(long time, int session, String component) {
+            return new Event(CLICK, time, session, component, 0L, null, null, null);
+        }
+
+        public static Event clear(long time, int session) {
+            return new Event(CLEAR, time, session, null, 0L, null, null, null);
+        }
+    }
+
+    public static final class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> interned = new HashMap<>();
+        private long lastTime;
+
+        public Writer(OutputStream out, long startTime) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeLong(startTime);
+            lastTime = startTime;
+        }
+
+        public void write(Event e) throws IOException {
+            out.writeByte(e.type());
+            writeVarLong(Math.max(0L, e.time() - lastTime));
+            lastTime = Math.max(lastTime, e.time());
+            switch (e.type()) {
+                case APPS -> {
+                    out.writeLong(e.value());
+                    writeVarLong(e.keys().length);
+                    for (int i = 0; i < e.keys().length; i++) {
+                        writeRef(e.keys()[i]);
+                        out.writeUTF(e.titles()[i]);
+                        out.writeUTF(e.packages()[i]);
+                    }
+                }
+                case QUERY -> {
+                    writeVarLong(e.session());
+                    out.writeUTF(e.text());
+                    writeVarLong(e.value());
+                    writeVarLong(e.keys().length);
+                    for (String key : e.keys()) writeRef(key);
+                }
+                case CLICK -> {
+                    writeVarLong(e.session());
+                    writeRef(e.text());
+                }
+                case CLEAR -> writeVarLong(e.session());
+                default -> throw new IOException("unknown event " + e.type());
+            }
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        public int size() {
+            return out.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        // First use writes 0 and the string; later uses write its 1-based id.
+        private void writeRef(String s) throws IOException {
+            Integer id = interned.get(s);
+            if (id != null) {
+                writeVarLong(id);
+                return;
+            }
+            interned.put(s, interned.size() + 1);
+            writeVarLong(0);
+            out.writeUTF(s);
+        }
+
+        private void writeVarLong(long v) throws IOException {
+            while ((v & ~0x7FL) != 0) {
+                out.writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.writeByte((int) v);
+        }
+    }
+
+    public static final class Reader implements AutoCloseable {
+        private final DataInputStream in;
+        private final ArrayList<String> interned = new ArrayList<>();
+        private final long startTime;
+        private long lastTime;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC || this.in.readInt() != VERSION) throw new IOException("not a search journal");
+            startTime = this.in.readLong();
+            lastTime = startTime;
+        }
+
+        public long startTime() {
+            return startTime;
+        }
+
+        // Next event, or null at the end of the file or at a record torn by a crash.
+        public Event next() throws IOException {
+            try {
+                byte type = in.readByte();
+                long time = lastTime + readVarLong();
+                lastTime = time;
+                switch (type) {
+                    case APPS -> {
+                        long signature = in.readLong();
+                        int n = (int) readVarLong();
+                        String[] keys = new String[n];
+                        String[] titles = new String[n];
+                        String[] packages = new String[n];
+                        for (int i = 0; i < n; i++) {
+                            keys[i] = readRef();
+                            titles[i] = in.readUTF();
+                            packages[i] = in.readUTF();
+                        }
+                        return Event.apps(time, signature, keys, titles, packages);
+                    }
+                    case QUERY -> {
+                        int session = (int) readVarLong();
+                        String query = in.readUTF();
+                        long latency = readVarLong();
+                        String[] results = new String[(int) readVarLong()];
+                        for (int i = 0; i < results.length; i++) results[i] = readRef();
+                        return Event.query(time, session, query, latency, results);
+                    }
+                    case CLICK -> {
+                        int session = (int) readVarLong();
+                        return Event.click(time, session, readRef());
+                    }
+                    case CLEAR -> {
+                        return Event.clear(time, (int) readVarLong());
+                    }
+                    default -> throw new IOException("unknown event " + type);
+                }
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String readRef() throws IOException {
+            int id = (int) readVarLong();
+            if (id > 0) {
+                if (id > interned.size()) throw new IOException("bad string ref " + id);
+                return interned.get(id - 1);
+            }
+            String s = in.readUTF();
+            interned.add(s);
+            return s;
+        }
+
+        private long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("malformed varint");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package be.zvz.sony.launchersearchenhancer.store;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Persistence for LearningTable: a compact snapshot plus an append-only log of the changes made
+// since. Loading reads the snapshot and replays the log, stopping at a torn tail; compaction
+// writes a new snapshot and starts an empty log. Only the store's IO thread writes.
+final class LearningLog {
+
+    private static final String TAG = "LearningLog";
+    private static final String SNAPSHOT_FILE = "learning.snapshot";
+    private static final String LOG_FILE = "learning.log";
+    private static final int MAGIC = 0x584C534C; // "XLSL"
+    private static final int VERSION = 2;
+
+    private static final byte OP_SLOT = 3;
+
+    private final File dir;
+    private DataOutputStream logOut;
+    private int logRecords;
+
+    LearningLog(File dir) {
+        this.dir = dir;
+    }
+
+    boolean hasSnapshot() {
+        return new File(dir, SNAPSHOT_FILE).exists();
+    }
+
+    int logRecords() {
+        return logRecords;
+    }
+
+    // The snapshot, or base when there is none yet, with the log replayed on top.
+    LearningTable load(LearningTable base) {
+        LearningTable table = base != null ? base : new LearningTable();
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        if (snapshot.exists()) {
+            table = new LearningTable();
+            try (DataInputStream in = open(snapshot)) {
+                if (in.readInt() != MAGIC) throw new IOException("unknown snapshot format");
+                int version = in.readInt();
+                if (version != VERSION) throw new IOException("unknown snapshot version " + version);
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    String query = in.readUTF();
+                    int slots = in.readByte();
+                    for (int k = 0; k < slots; k++) table.set(query, in.readUTF(), in.readFloat(), in.readLong());
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "snapshot unreadable, starting from the log", e);
+                table = new LearningTable();
+            }
+        }
+
+        File log = new File(dir, LOG_FILE);
+        logRecords = 0;
+        if (log.exists()) {
+            try (DataInputStream in = open(log)) {
+                while (true) {
+                    byte op = in.readByte();
+                    if (op != OP_SLOT) throw new IOException("bad log record " + op);
+                    String query = in.readUTF();
+                    String component = in.readUTF();
+                    float score = in.readFloat();
+                    long time = in.readLong();
+                    table.set(query, component, score, time);
+                    logRecords++;
+                }
+            } catch (EOFException ignored) {
+                // End of log, or a record torn by a crash; everything before it stands.
+            } catch (IOException e) {
+                Log.w(TAG, "log replay stopped early", e);
+            }
+        }
+        return table;
+    }
+
+    // Records a slot's new state. Replay places it exactly as LearningTable.bump() did, since
+    // eviction depends only on the row and the record's time.
+    void appendSlot(String query, String component, float score, long time) throws IOException {
+        DataOutputStream out = logOut();
+        out.writeByte(OP_SLOT);
+        out.writeUTF(query);
+        out.writeUTF(component);
+        out.writeFloat(score);
+        out.writeLong(time);
+        out.flush();
+        logRecords++;
+    }
+
+    // Replaces the snapshot atomically, then truncates the log it supersedes.
+    void writeSnapshot(LearningTable table) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        File tmp = new File(dir, SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int live = 0;
+            for (int row = 0; row < table.rowCount(); row++) {
+                if (table.isLive(row)) live++;
+            }
+            out.writeInt(live);
+            for (int row = 0; row < table.rowCount(); row++) {
+                if (!table.isLive(row)) continue;
+                out.writeUTF(table.query(row));
+                int slots = 0;
+                for (int k = 0; k < LearningTable.SLOTS; k++) {
+                    if (table.component(row, k) != null) slots++;
+                }
+                out.writeByte(slots);
+                for (int k = 0; k < LearningTable.SLOTS; k++) {
+                    String component = table.component(row, k);
+                    if (component == null) continue;
+                    out.writeUTF(component);
+                    out.writeFloat(table.storedScore(row, k));
+                    out.writeLong(table.time(row, k));
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, SNAPSHOT_FILE))) throw new IOException("snapshot rename failed");
+
+        closeLog();
+        File log = new File(dir, LOG_FILE);
+        if (log.exists() && !log.delete()) throw new IOException("log truncate failed");
+        logRecords = 0;
+    }
+
+    void closeLog() {
+        if (logOut == null) return;
+        try {
+            logOut.close();
+        } catch (IOException ignored) {
+        }
+        logOut = null;
+    }
+
+    private DataOutputStream logOut() throws IOException {
+        if (logOut == null) {
+            if (!dir.exists() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+            logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, LOG_FILE), true)));
+        }
+        return logOut;
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+}
@@ -3,147 +3,260 @@ package be.zvz.sony.launchersearchenhancer.store;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.text.TextUtils;
+import android.util.Log;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+// Learned query -> components, a few decaying frecency slots per query so apps that share a query
+// keep their own scores. Lookups and updates touch only the in-memory table;
+// every change is appended to a log on a background thread, which is folded into a snapshot
+// once it grows, so a click never waits on disk and startup reads one compact file. The table is
+// loaded on that thread too: until it arrives lookups see an empty table and clicks are held.
 public class LearningStore {
-    private static final String PREF = "xlauncher_enhanced_search_learning";
+    private static final String TAG = "LearningStore";
+    private static final String DIR = "learning";
+    private static final String LEGACY_PREF = "xlauncher_enhanced_search_learning";
     private static final String K_COMP = "c:";
     private static final String K_CNT = "n:";
     private static final String K_TS = "t:";
 
-    private static final long DAY_MS = 24L * 60L * 60L * 1000L;
-    private static final long HARD_EXPIRE_MS = 30L * DAY_MS;
-    private static final long GC_INTERVAL_MS = DAY_MS;
-    private static final String K_LAST_GC = "__last_gc";
+    private static final float CLICK_CAP = 20f;
+    private static final float BRIDGE_CAP = 6f;
+    // Share of a completion's bonus given to a query that is still a prefix of it.
+    private static final float PREFIX_FACTOR = 0.6f;
+    private static final int COMPACT_AFTER_RECORDS = 256;
 
-    private volatile SharedPreferences cachedPrefs;
+    // Learned bonuses for one query: its own slots plus the best completions of it as a prefix.
+    public static final class Bonuses {
+        public static final Bonuses EMPTY = new Bonuses(new String[0], new int[0]);
 
-    private SharedPreferences prefs(Context c) {
-        SharedPreferences sp = cachedPrefs;
-        if (sp != null) return sp;
-        sp = c.getSharedPreferences(PREF, Context.MODE_PRIVATE);
-        cachedPrefs = sp;
-        return sp;
-    }
+        private final String[] components;
+        private final int[] values;
 
-    public synchronized void observe(Context c, String queryNorm, String component) {
-        if (c == null || TextUtils.isEmpty(queryNorm) || TextUtils.isEmpty(component)) return;
-        if (queryNorm.length() < 2) return;
+        private Bonuses(String[] components, int[] values) {
+            this.components = components;
+            this.values = values;
+        }
 
-        long now = System.currentTimeMillis();
-        maybeGc(c, now);
+        public int get(String component) {
+            for (int i = 0; i < components.length; i++) {
+                if (components[i].equals(component)) return values[i];
+            }
+            return 0;
+        }
 
-        SharedPreferences sp = prefs(c);
-        String compKey = K_COMP + queryNorm;
-        String cntKey = K_CNT + queryNorm;
-        String tsKey = K_TS + queryNorm;
+        public boolean isEmpty() {
+            return components.length == 0;
+        }
+    }
 
-        // Prune if hard-expired
-        long ts = sp.getLong(tsKey, 0L);
-        if (ts > 0 && now - ts >= HARD_EXPIRE_MS) {
-            removeMapping(sp, queryNorm);
+    private final ExecutorService io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "XLS-Learning");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
         }
+    });
 
-        String prevComp = sp.getString(compKey, "");
-        int cnt = sp.getInt(cntKey, 0);
+    private LearningTable table;
+    private LearningLog log;
+    private int pendingRecords;
+    // Clicks made while the table is loading, replayed onto it once loaded; null after that.
+    private ArrayList<Click> heldClicks;
 
-        cnt = component.equals(prevComp) ? Math.min(cnt + 1, 20) : 1;
+    private record Click(String query, String component, float cap, long time) {
+    }
 
-        sp.edit()
-                .putString(compKey, component)
-                .putInt(cntKey, cnt)
-                .putLong(tsKey, now)
-                .commit();
+    public synchronized void observe(Context c, String queryNorm, String component) {
+        if (c == null || TextUtils.isEmpty(queryNorm) || TextUtils.isEmpty(component)) return;
+        if (queryNorm.length() < 2) return;
+        ensureLoaded(c);
+        bump(queryNorm, component, CLICK_CAP);
     }
 
     public synchronized void observeWeakBridge(Context c, String queryNorm, String component) {
         if (c == null || TextUtils.isEmpty(queryNorm) || TextUtils.isEmpty(component)) return;
         if (queryNorm.length() < 2) return;
+        ensureLoaded(c);
+        bump(queryNorm, component, BRIDGE_CAP);
+    }
 
-        SharedPreferences sp = prefs(c);
-        String compKey = K_COMP + queryNorm;
-        String cntKey = K_CNT + queryNorm;
-        String tsKey = K_TS + queryNorm;
-
-        String prevComp = sp.getString(compKey, "");
-        int cnt = sp.getInt(cntKey, 0);
+    public synchronized Bonuses getBonuses(Context c, String queryNorm) {
+        if (c == null || TextUtils.isEmpty(queryNorm) || queryNorm.length() < 2) return Bonuses.EMPTY;
+        ensureLoaded(c);
 
-        cnt = component.equals(prevComp) ? Math.min(cnt + 1, 6) : 1;
+        int node = table.node(queryNorm);
+        if (node < 0) return Bonuses.EMPTY;
 
-        sp.edit()
-                .putString(compKey, component)
-                .putInt(cntKey, cnt)
-                .putLong(tsKey, System.currentTimeMillis())
-                .commit();
+        long now = System.currentTimeMillis();
+        String[] components = new String[LearningTable.SLOTS * 2];
+        int[] values = new int[LearningTable.SLOTS * 2];
+        int n = 0;
+        int row = table.nodeRow(node);
+        for (int k = 0; row >= 0 && k < LearningTable.SLOTS; k++) {
+            float score = table.score(row, k, now);
+            if (score < LearningTable.MIN_SCORE) continue;
+            components[n] = table.component(row, k);
+            values[n++] = bonus(score);
+        }
+        // The node's aggregate includes its own row, which the exact bonus above already beats.
+        for (int k = 0; k < LearningTable.SLOTS; k++) {
+            float score = table.bestScore(node, k, now);
+            if (score < LearningTable.MIN_SCORE) continue;
+            String component = table.best(node, k);
+            int value = (int) (bonus(score) * PREFIX_FACTOR);
+            int i = indexOf(components, n, component);
+            if (i < 0) {
+                components[n] = component;
+                values[n++] = value;
+            } else if (value > values[i]) {
+                values[i] = value;
+            }
+        }
+        if (n == 0) return Bonuses.EMPTY;
+        return new Bonuses(Arrays.copyOf(components, n), Arrays.copyOf(values, n));
     }
 
-    public synchronized int getBonus(Context c, String queryNorm, String component) {
-        if (c == null || TextUtils.isEmpty(queryNorm) || TextUtils.isEmpty(component)) return 0;
-        if (queryNorm.length() < 2) return 0;
+    private static int indexOf(String[] components, int n, String component) {
+        for (int i = 0; i < n; i++) {
+            if (components[i].equals(component)) return i;
+        }
+        return -1;
+    }
 
+    public synchronized List<String> learnedQueries(Context c) {
+        if (c == null) return Collections.emptyList();
+        ensureLoaded(c);
         long now = System.currentTimeMillis();
-        maybeGc(c, now);
-
-        SharedPreferences sp = prefs(c);
-        String comp = sp.getString(K_COMP + queryNorm, "");
-        if (!component.equals(comp)) return 0;
+        ArrayList<String> out = new ArrayList<>();
+        for (int row = 0; row < table.rowCount(); row++) {
+            for (int k = 0; k < LearningTable.SLOTS; k++) {
+                if (table.score(row, k, now) >= LearningTable.MIN_SCORE) {
+                    out.add(table.query(row));
+                    break;
+                }
+            }
+        }
+        return out;
+    }
 
-        int cnt = sp.getInt(K_CNT + queryNorm, 0);
-        long ts = sp.getLong(K_TS + queryNorm, 0L);
-        if (ts <= 0L) return 0;
+    // Same curve as the old count-based bonus (110 + 12 per use, capped at 240) on the decayed
+    // score, faded in linearly below one use's worth so a slot vanishes smoothly.
+    private static int bonus(float score) {
+        return (int) (Math.min(110f + score * 12f, 240f) * Math.min(score, 1f));
+    }
 
-        long age = now - ts;
-        if (age >= HARD_EXPIRE_MS) {
-            removeMapping(sp, queryNorm);
-            return 0;
+    private void bump(String query, String component, float cap) {
+        long now = System.currentTimeMillis();
+        if (heldClicks != null) {
+            heldClicks.add(new Click(query, component, cap, now));
+            return;
         }
-
-        // Frecency: base score from count, multiplied by recency factor
-        int base = Math.min(110 + cnt * 12, 240);
-        float recency = recencyMultiplier(age);
-        return Math.max((int) (base * recency), 0);
+        bump(query, component, cap, now);
     }
 
-    private static float recencyMultiplier(long ageMs) {
-        if (ageMs < DAY_MS) return 1.0f;
-        if (ageMs < 3 * DAY_MS) return 0.8f;
-        if (ageMs < 7 * DAY_MS) return 0.6f;
-        if (ageMs < 14 * DAY_MS) return 0.4f;
-        if (ageMs < 30 * DAY_MS) return 0.2f;
-        return 0f;
+    private void bump(String query, String component, float cap, long now) {
+        float score = table.bump(query, component, 1f, cap, now);
+        submit(() -> log.appendSlot(query, component, score, now));
     }
 
-    private void removeMapping(SharedPreferences sp, String queryNorm) {
-        sp.edit()
-                .remove(K_COMP + queryNorm)
-                .remove(K_CNT + queryNorm)
-                .remove(K_TS + queryNorm)
-                .apply();
+    private interface LogTask {
+        void run() throws Exception;
     }
 
-    private void maybeGc(Context c, long now) {
-        SharedPreferences sp = prefs(c);
-        long last = sp.getLong(K_LAST_GC, 0L);
-        if (now - last < GC_INTERVAL_MS) return;
+    private void submit(LogTask task) {
+        if (++pendingRecords >= COMPACT_AFTER_RECORDS) {
+            pendingRecords = 0;
+            io.execute(() -> compact(null));
+            return;
+        }
+        io.execute(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                Log.w(TAG, "learning log write failed", t);
+            }
+        });
+    }
 
-        Map<String, ?> all = sp.getAll();
-        if (all == null || all.isEmpty()) {
-            sp.edit().putLong(K_LAST_GC, now).apply();
+    // IO thread. Faded slots are dropped and the snapshot rewritten from a copy taken under the
+    // lock; records queued before this task are covered by the copy and those queued after it
+    // set the same slot states again. Legacy prefs are deleted only once the snapshot is on disk.
+    private void compact(Context legacyOwner) {
+        LearningTable copy;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            table = table.compact(now);
+            copy = table.compact(now);
+        }
+        try {
+            log.writeSnapshot(copy);
+        } catch (Throwable t) {
+            Log.w(TAG, "learning snapshot failed", t);
             return;
         }
-        SharedPreferences.Editor ed = sp.edit();
+        if (legacyOwner != null) {
+            try {
+                legacyOwner.deleteSharedPreferences(LEGACY_PREF);
+            } catch (Throwable ignored) {
+            }
+        }
+    }
 
-        for (String k : all.keySet()) {
-            if (!k.startsWith(K_TS)) continue;
-            Object v = all.get(k);
-            if (!(v instanceof Long ts)) continue;
-            if (now - ts < HARD_EXPIRE_MS) continue;
+    private void ensureLoaded(Context c) {
+        if (table != null) return;
+        table = new LearningTable();
+        heldClicks = new ArrayList<>();
+        log = new LearningLog(new File(c.getFilesDir(), DIR));
+        io.execute(() -> load(c));
+    }
 
-            String q = k.substring(K_TS.length());
-            ed.remove(K_COMP + q).remove(K_CNT + q).remove(K_TS + q);
+    // IO thread.
+    private void load(Context c) {
+        // Until a snapshot has been written the legacy prefs are still the source of truth, with
+        // any clicks logged since replayed over them.
+        boolean legacy = !log.hasSnapshot();
+        LearningTable loaded = log.load(legacy ? importLegacy(c) : null);
+        int records = log.logRecords();
+        synchronized (this) {
+            table = loaded;
+            pendingRecords = 0;
+            List<Click> held = heldClicks;
+            heldClicks = null;
+            for (Click click : held) bump(click.query(), click.component(), click.cap(), click.time());
         }
+        // Start every session from a fresh snapshot, which also drops a torn log tail.
+        if (legacy || records > 0) compact(legacy ? c : null);
+    }
 
-        ed.putLong(K_LAST_GC, now).apply();
+    // One-time migration from the SharedPreferences layout (c:/n:/t: per query).
+    private static LearningTable importLegacy(Context c) {
+        LearningTable imported = new LearningTable();
+        try {
+            SharedPreferences sp = c.getSharedPreferences(LEGACY_PREF, Context.MODE_PRIVATE);
+            Map<String, ?> all = sp.getAll();
+            if (all == null) return imported;
+            for (Map.Entry<String, ?> e : all.entrySet()) {
+                if (!e.getKey().startsWith(K_COMP) || !(e.getValue() instanceof String comp)) continue;
+                String q = e.getKey().substring(K_COMP.length());
+                Object cnt = all.get(K_CNT + q);
+                Object ts = all.get(K_TS + q);
+                if (TextUtils.isEmpty(comp) || !(ts instanceof Long time) || time <= 0L) continue;
+                imported.set(q, comp, cnt instanceof Integer n ? n : 1, time);
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "legacy learning import failed", t);
+        }
+        return imported;
     }
 }
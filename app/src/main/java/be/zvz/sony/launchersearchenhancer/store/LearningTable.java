@@ -0,0 +1,308 @@
+package be.zvz.sony.launchersearchenhancer.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Learned query -> up to SLOTS (component, score, last use) entries, kept in parallel primitive
+// arrays. Queries are indexed by a character trie whose nodes also keep the best SLOTS components
+// of their whole subtree, so one walk down a partial query finds what its completions learned.
+// Scores decay exponentially from their timestamp and are only brought forward when read or
+// bumped, so idle rows cost nothing. Components are interned to ordinals. Not thread-safe;
+// LearningStore guards it.
+final class LearningTable {
+
+    static final int SLOTS = 4;
+    static final long HALF_LIFE_MS = 7L * 24L * 60L * 60L * 1000L;
+    // A single click falls below this after about a month.
+    static final float MIN_SCORE = 0.05f;
+
+    private static final int MIN_CAPACITY = 64;
+    private static final int ROOT = 0;
+
+    // Trie: first-child / next-sibling links, the row ending at each node (-1 for none) and the
+    // subtree's best components ranked by log2(score) + time / HALF_LIFE_MS. That rank orders
+    // decayed scores the same way at every instant, so the aggregates never need re-sorting.
+    private char[] nodeChars;
+    private int[] nodeChildren;
+    private int[] nodeSiblings;
+    private int[] nodeRows;
+    private int[] bestComponents;
+    private double[] bestRanks;
+    private int nodes;
+    // Set when a slot is evicted or cleared, leaving aggregates that may name it; rebuilt lazily.
+    private boolean aggregatesStale;
+
+    private String[] queries;
+    private int[] components;
+    private float[] scores;
+    private long[] times;
+    private int rows;
+
+    private final ArrayList<String> componentNames = new ArrayList<>();
+    private final HashMap<String, Integer> componentOrdinals = new HashMap<>();
+
+    LearningTable() {
+        allocateRows(MIN_CAPACITY);
+        allocateNodes(MIN_CAPACITY * 4);
+        newNode('\0');
+    }
+
+    int rowCount() {
+        return rows;
+    }
+
+    // Row of the query, or -1. A row may have no occupied slots left.
+    int find(String query) {
+        int node = node(query);
+        return node < 0 ? -1 : nodeRows[node];
+    }
+
+    // Trie node for the query as a prefix, or -1 when no learned query starts with it.
+    int node(String query) {
+        int node = ROOT;
+        for (int i = 0; i < query.length() && node >= 0; i++) node = child(node, query.charAt(i));
+        return node;
+    }
+
+    // Row ending exactly at the node, or -1.
+    int nodeRow(int node) {
+        return nodeRows[node];
+    }
+
+    // Component of the node's k-th best subtree entry, or null.
+    String best(int node, int k) {
+        if (aggregatesStale) rebuildAggregates();
+        int ordinal = bestComponents[node * SLOTS + k];
+        return ordinal < 0 ? null : componentNames.get(ordinal);
+    }
+
+    // That entry's score decayed to `now`; 0 when empty.
+    float bestScore(int node, int k, long now) {
+        if (aggregatesStale) rebuildAggregates();
+        int s = node * SLOTS + k;
+        if (bestComponents[s] < 0) return 0f;
+        return (float) Math.pow(2.0, bestRanks[s] - (double) now / HALF_LIFE_MS);
+    }
+
+    // Decays the component's slot to `now` and adds `amount`, never raising it past `cap` (an
+    // entry already above the cap is left there). A component without a slot takes an empty one
+    // or evicts the weakest. Returns the new score.
+    float bump(String query, String component, float amount, float cap, long now) {
+        int row = row(query);
+        int k = slotOf(row, ordinal(component));
+        float current = k >= 0 ? decayed(row * SLOTS + k, now) : 0f;
+        float next = current >= cap ? current : Math.min(current + amount, cap);
+        set(row, component, next, now);
+        return next;
+    }
+
+    // Overwrites the component's slot, placing it the same way bump() does; used for replay.
+    void set(String query, String component, float score, long time) {
+        set(row(query), component, score, time);
+    }
+
+    boolean isLive(int row) {
+        for (int k = 0; k < SLOTS; k++) {
+            if (components[row * SLOTS + k] >= 0) return true;
+        }
+        return false;
+    }
+
+    String query(int row) {
+        return queries[row];
+    }
+
+    // Component in slot k of the row, or null when the slot is empty.
+    String component(int row, int k) {
+        int ordinal = components[row * SLOTS + k];
+        return ordinal < 0 ? null : componentNames.get(ordinal);
+    }
+
+    // Slot score decayed to `now`; 0 for an empty slot.
+    float score(int row, int k, long now) {
+        int s = row * SLOTS + k;
+        return components[s] < 0 ? 0f : decayed(s, now);
+    }
+
+    float storedScore(int row, int k) {
+        return scores[row * SLOTS + k];
+    }
+
+    long time(int row, int k) {
+        return times[row * SLOTS + k];
+    }
+
+    // Copy holding only slots still worth MIN_SCORE at `now`, with ordinals, trie and aggregates
+    // rebuilt densely. Stored scores and times are carried over as they are.
+    LearningTable compact(long now) {
+        LearningTable out = new LearningTable();
+        for (int row = 0; row < rows; row++) {
+            for (int k = 0; k < SLOTS; k++) {
+                int s = row * SLOTS + k;
+                if (components[s] < 0 || decayed(s, now) < MIN_SCORE) continue;
+                out.set(queries[row], componentNames.get(components[s]), scores[s], times[s]);
+            }
+        }
+        return out;
+    }
+
+    static float decay(float score, long time, long now) {
+        if (now <= time) return score;
+        return (float) (score * Math.pow(0.5, (double) (now - time) / HALF_LIFE_MS));
+    }
+
+    private float decayed(int s, long now) {
+        return decay(scores[s], times[s], now);
+    }
+
+    private static double rank(float score, long time) {
+        return Math.log(score) / Math.log(2.0) + (double) time / HALF_LIFE_MS;
+    }
+
+    private void set(int row, String component, float score, long time) {
+        int ordinal = ordinal(component);
+        int k = slotOf(row, ordinal);
+        if (k < 0) {
+            k = freeSlot(row, time);
+            if (components[row * SLOTS + k] >= 0) aggregatesStale = true;
+        }
+        int s = row * SLOTS + k;
+        components[s] = ordinal;
+        scores[s] = score;
+        times[s] = time;
+        if (!aggregatesStale && score > 0f) propagate(queries[row], ordinal, rank(score, time));
+    }
+
+    // Raises the component's rank on every node along the query's path. Ranks of a (query,
+    // component) pair only grow between rebuilds, so keeping the best SLOTS per node stays exact.
+    private void propagate(String query, int ordinal, double rank) {
+        int node = ROOT;
+        for (int i = 0; ; i++) {
+            offer(node, ordinal, rank);
+            if (i == query.length()) return;
+            node = child(node, query.charAt(i));
+        }
+    }
+
+    private void offer(int node, int ordinal, double rank) {
+        int base = node * SLOTS;
+        int weakest = -1;
+        for (int k = 0; k < SLOTS; k++) {
+            int s = base + k;
+            if (bestComponents[s] == ordinal) {
+                if (rank > bestRanks[s]) bestRanks[s] = rank;
+                return;
+            }
+            if (weakest < 0 || bestComponents[s] < 0
+                    || (bestComponents[base + weakest] >= 0 && bestRanks[s] < bestRanks[base + weakest])) {
+                weakest = k;
+            }
+        }
+        int s = base + weakest;
+        if (bestComponents[s] >= 0 && bestRanks[s] >= rank) return;
+        bestComponents[s] = ordinal;
+        bestRanks[s] = rank;
+    }
+
+    private void rebuildAggregates() {
+        aggregatesStale = false;
+        Arrays.fill(bestComponents, 0, nodes * SLOTS, -1);
+        for (int row = 0; row < rows; row++) {
+            for (int k = 0; k < SLOTS; k++) {
+                int s = row * SLOTS + k;
+                if (components[s] >= 0 && scores[s] > 0f) propagate(queries[row], components[s], rank(scores[s], times[s]));
+            }
+        }
+    }
+
+    private int slotOf(int row, int ordinal) {
+        for (int k = 0; k < SLOTS; k++) {
+            if (components[row * SLOTS + k] == ordinal) return k;
+        }
+        return -1;
+    }
+
+    // First empty slot, else the one with the lowest score at `now`.
+    private int freeSlot(int row, long now) {
+        int weakest = 0;
+        float weakestScore = Float.MAX_VALUE;
+        for (int k = 0; k < SLOTS; k++) {
+            int s = row * SLOTS + k;
+            if (components[s] < 0) return k;
+            float score = decayed(s, now);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = k;
+            }
+        }
+        return weakest;
+    }
+
+    private int ordinal(String component) {
+        Integer ordinal = componentOrdinals.get(component);
+        if (ordinal == null) {
+            ordinal = componentNames.size();
+            componentNames.add(component);
+            componentOrdinals.put(component, ordinal);
+        }
+        return ordinal;
+    }
+
+    private int child(int node, char c) {
+        for (int n = nodeChildren[node]; n >= 0; n = nodeSiblings[n]) {
+            if (nodeChars[n] == c) return n;
+        }
+        return -1;
+    }
+
+    // Row of the query, appended with empty slots (and its trie path) if it is new.
+    private int row(String query) {
+        int node = ROOT;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            int next = child(node, c);
+            if (next < 0) {
+                next = newNode(c);
+                nodeSiblings[next] = nodeChildren[node];
+                nodeChildren[node] = next;
+            }
+            node = next;
+        }
+        if (nodeRows[node] >= 0) return nodeRows[node];
+
+        if (rows == queries.length) allocateRows(rows * 2);
+        int row = rows++;
+        queries[row] = query;
+        Arrays.fill(components, row * SLOTS, row * SLOTS + SLOTS, -1);
+        nodeRows[node] = row;
+        return row;
+    }
+
+    private int newNode(char c) {
+        if (nodes == nodeChars.length) allocateNodes(nodes * 2);
+        int node = nodes++;
+        nodeChars[node] = c;
+        nodeChildren[node] = -1;
+        nodeSiblings[node] = -1;
+        nodeRows[node] = -1;
+        Arrays.fill(bestComponents, node * SLOTS, node * SLOTS + SLOTS, -1);
+        return node;
+    }
+
+    private void allocateRows(int capacity) {
+        queries = queries == null ? new String[capacity] : Arrays.copyOf(queries, capacity);
+        components = components == null ? new int[capacity * SLOTS] : Arrays.copyOf(components, capacity * SLOTS);
+        scores = scores == null ? new float[capacity * SLOTS] : Arrays.copyOf(scores, capacity * SLOTS);
+        times = times == null ? new long[capacity * SLOTS] : Arrays.copyOf(times, capacity * SLOTS);
+    }
+
+    private void allocateNodes(int capacity) {
+        nodeChars = nodeChars == null ? new char[capacity] : Arrays.copyOf(nodeChars, capacity);
+        nodeChildren = nodeChildren == null ? new int[capacity] : Arrays.copyOf(nodeChildren, capacity);
+        nodeSiblings = nodeSiblings == null ? new int[capacity] : Arrays.copyOf(nodeSiblings, capacity);
+        nodeRows = nodeRows == null ? new int[capacity] : Arrays.copyOf(nodeRows, capacity);
+        bestComponents = bestComponents == null ? new int[capacity * SLOTS] : Arrays.copyOf(bestComponents, capacity * SLOTS);
+        bestRanks = bestRanks == null ? new double[capacity * SLOTS] : Arrays.copyOf(bestRanks, capacity * SLOTS);
+    }
+}
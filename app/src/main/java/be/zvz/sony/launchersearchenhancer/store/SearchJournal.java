@@ -0,0 +1,196 @@
+package be.zvz.sony.launchersearchenhancer.store;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Opt-in record of search activity for offline replay (bench: JournalReplay). Enabled while
+// files/search-journal/enabled exists in the launcher's data dir. Search and click threads publish
+// into a lock-free ring and never touch disk; a background thread drains it in batches into
+// JournalFile segments, and at most FLUSH_DELAY_MS after the last publish. When the ring is full,
+// events are dropped rather than waited on.
+public class SearchJournal {
+    private static final String TAG = "SearchJournal";
+    private static final String DIR = "search-journal";
+    private static final String ENABLE_MARKER = "enabled";
+    private static final long ENABLE_CHECK_INTERVAL_MS = 60_000L;
+
+    private static final int CAPACITY = 1024;
+    private static final int FLUSH_BATCH = 64;
+    private static final long FLUSH_DELAY_MS = 2_000L;
+    private static final int MAX_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_SEGMENTS = 8;
+
+    private final AtomicReferenceArray<JournalFile.Event> ring = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong head = new AtomicLong();
+    // Owned by the flush thread; producers only read it to detect a full ring.
+    private volatile long tail;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "XLS-Journal");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private volatile File dir;
+    private volatile boolean enabled;
+    private volatile long enabledCheckedAt = Long.MIN_VALUE;
+    private volatile long catalogSignature;
+
+    // Flush-thread state.
+    private JournalFile.Writer writer;
+    private JournalFile.Event lastCatalog;
+
+    public boolean isEnabled(Context c) {
+        long now = SystemClock.uptimeMillis();
+        if (now - enabledCheckedAt >= ENABLE_CHECK_INTERVAL_MS && c != null) {
+            enabledCheckedAt = now;
+            File d = dir;
+            if (d == null) dir = d = new File(c.getFilesDir(), DIR);
+            enabled = new File(d, ENABLE_MARKER).exists();
+        }
+        return enabled;
+    }
+
+    public boolean needsCatalog(long signature) {
+        return enabled && signature != catalogSignature;
+    }
+
+    public void catalog(long signature, String[] keys, String[] titles, String[] packages) {
+        if (!enabled) return;
+        catalogSignature = signature;
+        publish(JournalFile.Event.apps(System.currentTimeMillis(), signature, keys, titles, packages));
+    }
+
+    public void query(int session, String rawQuery, long latencyNanos, String[] results) {
+        if (!enabled || rawQuery == null) return;
+        publish(JournalFile.Event.query(System.currentTimeMillis(), session, rawQuery, latencyNanos / 1000L, results));
+    }
+
+    public void click(int session, String component) {
+        if (!enabled || component == null) return;
+        publish(JournalFile.Event.click(System.currentTimeMillis(), session, component));
+        flushSoon();
+    }
+
+    public void clear(int session) {
+        if (!enabled) return;
+        publish(JournalFile.Event.clear(System.currentTimeMillis(), session));
+        flushSoon();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void publish(JournalFile.Event event) {
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        ring.set((int) (seq & (CAPACITY - 1)), event);
+        if ((seq + 1) % FLUSH_BATCH == 0) flushSoon();
+        else flushLater();
+    }
+
+    private void flushSoon() {
+        if (!flushQueued.compareAndSet(false, true)) return;
+        io.execute(() -> {
+            flushQueued.set(false);
+            drain();
+        });
+    }
+
+    // Covers a session that ends without a click or clear, so its tail is not left in memory.
+    private void flushLater() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        io.schedule(() -> {
+            flushScheduled.set(false);
+            drain();
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Writes published events in order. A claimed slot whose event is not visible yet ends the
+    // batch; the next flush picks it up.
+    private void drain() {
+        long t = tail;
+        long h = head.get();
+        try {
+            while (t < h) {
+                int i = (int) (t & (CAPACITY - 1));
+                JournalFile.Event e = ring.get(i);
+                if (e == null) break;
+                ring.set(i, null);
+                tail = ++t;
+                writer(e.time()).write(e);
+                if (e.type() == JournalFile.APPS) lastCatalog = e;
+            }
+            if (writer != null) writer.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "journal write failed", e);
+            closeWriter();
+        }
+    }
+
+    // A new segment starts at the time of its first event, which may predate the flush.
+    private JournalFile.Writer writer(long startTime) throws IOException {
+        if (writer != null && writer.size() >= MAX_SEGMENT_BYTES) closeWriter();
+        if (writer == null) {
+            File d = dir;
+            if (!d.exists() && !d.mkdirs()) throw new IOException("cannot create " + d);
+            pruneSegments(d);
+            writer = new JournalFile.Writer(new BufferedOutputStream(new FileOutputStream(
+                    new File(d, "journal-" + System.currentTimeMillis() + ".bin"))), startTime);
+            // Each segment stands alone, so it starts with the app catalog in effect, stamped with
+            // the segment start rather than the time it was first recorded.
+            JournalFile.Event c = lastCatalog;
+            if (c != null) {
+                writer.write(JournalFile.Event.apps(startTime, c.value(), c.keys(), c.titles(), c.packages()));
+            }
+        }
+        return writer;
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+        }
+        writer = null;
+    }
+
+    // Keeps the newest MAX_SEGMENTS - 1 segments, leaving room for the one about to be opened.
+    private static void pruneSegments(File d) {
+        File[] segments = d.listFiles((parent, name) -> name.startsWith("journal-") && name.endsWith(".bin"));
+        if (segments == null || segments.length < MAX_SEGMENTS) return;
+        Arrays.sort(segments, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i <= segments.length - MAX_SEGMENTS; i++) {
+            if (!segments[i].delete()) Log.w(TAG, "cannot delete " + segments[i]);
+        }
+    }
+}
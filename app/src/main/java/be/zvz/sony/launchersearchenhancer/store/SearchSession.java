@@ -0,0 +1,191 @@
+package be.zvz.sony.launchersearchenhancer.store;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+// Search-session state shared by the search hook and the click hook: the session id, recent
+// queries (for bridging a refined query to the one that found nothing), and queries that had no
+// results. Updates build a new immutable View over small fixed-size rings and publish it with a
+// CAS, so readers never block and never see a half-applied update. Resolving a pending query is
+// a per-slot CAS on its sequence number, which lets the click thread claim one without a lock.
+public class SearchSession {
+    private static final int HISTORY_MAX = 12;
+    private static final int PENDING_MAX = 30;
+    private static final long HISTORY_MERGE_MS = 2500L;
+    private static final long DUP_COOLDOWN_MS = 800L;
+
+    private final AtomicReference<View> view = new AtomicReference<>(View.INITIAL);
+    // Slot i is resolved while it holds the sequence number of the entry now in pending slot i.
+    private final AtomicLongArray resolved = new AtomicLongArray(PENDING_MAX);
+
+    private static final class View {
+        static final View INITIAL = new View(1,
+                new String[HISTORY_MAX], new long[HISTORY_MAX], 0, 0,
+                new String[PENDING_MAX], new long[PENDING_MAX], new int[PENDING_MAX], new long[PENDING_MAX], 0, 0, 1L);
+
+        final int sessionId;
+
+        final String[] historyQueries;
+        final long[] historyTimes;
+        final int historyHead;
+        final int historySize;
+
+        final String[] pendingQueries;
+        final long[] pendingTimes;
+        final int[] pendingSessions;
+        final long[] pendingSeqs;
+        final int pendingHead;
+        final int pendingSize;
+        final long nextSeq;
+
+        View(int sessionId,
+             String[] historyQueries, long[] historyTimes, int historyHead, int historySize,
+             String[] pendingQueries, long[] pendingTimes, int[] pendingSessions, long[] pendingSeqs,
+             int pendingHead, int pendingSize, long nextSeq) {
+            this.sessionId = sessionId;
+            this.historyQueries = historyQueries;
+            this.historyTimes = historyTimes;
+            this.historyHead = historyHead;
+            this.historySize = historySize;
+            this.pendingQueries = pendingQueries;
+            this.pendingTimes = pendingTimes;
+            this.pendingSessions = pendingSessions;
+            this.pendingSeqs = pendingSeqs;
+            this.pendingHead = pendingHead;
+            this.pendingSize = pendingSize;
+            this.nextSeq = nextSeq;
+        }
+
+        // Ring index of the i-th newest history / pending entry.
+        int history(int i) {
+            return (historyHead - 1 - i + HISTORY_MAX) % HISTORY_MAX;
+        }
+
+        int pending(int i) {
+            return (pendingHead - 1 - i + PENDING_MAX) % PENDING_MAX;
+        }
+
+        View withSession(int id) {
+            return new View(id, historyQueries, historyTimes, historyHead, historySize,
+                    pendingQueries, pendingTimes, pendingSessions, pendingSeqs, pendingHead, pendingSize, nextSeq);
+        }
+
+        // Writes the history slot at `at` (the newest slot when replacing, the head when appending).
+        View withHistory(int at, boolean append, String q, long ts) {
+            String[] queries = Arrays.copyOf(historyQueries, HISTORY_MAX);
+            long[] times = Arrays.copyOf(historyTimes, HISTORY_MAX);
+            queries[at] = q;
+            times[at] = ts;
+            int head = append ? (historyHead + 1) % HISTORY_MAX : historyHead;
+            int size = append ? Math.min(historySize + 1, HISTORY_MAX) : historySize;
+            return new View(sessionId, queries, times, head, size,
+                    pendingQueries, pendingTimes, pendingSessions, pendingSeqs, pendingHead, pendingSize, nextSeq);
+        }
+
+        View withPending(String q, long ts) {
+            String[] queries = Arrays.copyOf(pendingQueries, PENDING_MAX);
+            long[] times = Arrays.copyOf(pendingTimes, PENDING_MAX);
+            int[] sessions = Arrays.copyOf(pendingSessions, PENDING_MAX);
+            long[] seqs = Arrays.copyOf(pendingSeqs, PENDING_MAX);
+            queries[pendingHead] = q;
+            times[pendingHead] = ts;
+            sessions[pendingHead] = sessionId;
+            seqs[pendingHead] = nextSeq;
+            return new View(sessionId, historyQueries, historyTimes, historyHead, historySize,
+                    queries, times, sessions, seqs, (pendingHead + 1) % PENDING_MAX,
+                    Math.min(pendingSize + 1, PENDING_MAX), nextSeq + 1);
+        }
+    }
+
+    public int sessionId() {
+        return view.get().sessionId;
+    }
+
+    public void onCleared() {
+        update(v -> v.withSession(v.sessionId + 1));
+    }
+
+    // Consecutive keystrokes of one query collapse into a single entry.
+    public void recordQuery(String queryNorm, long ts) {
+        if (TextUtils.isEmpty(queryNorm) || queryNorm.length() < 2) return;
+        update(v -> {
+            if (v.historySize > 0) {
+                int last = v.history(0);
+                String lastQuery = v.historyQueries[last];
+                if (lastQuery.equals(queryNorm)
+                        || (queryNorm.startsWith(lastQuery) && ts - v.historyTimes[last] < HISTORY_MERGE_MS)) {
+                    return v.withHistory(last, false, queryNorm, ts);
+                }
+            }
+            return v.withHistory(v.historyHead, true, queryNorm, ts);
+        });
+    }
+
+    public List<String> recentBefore(String current, long now, long windowMs, int limit) {
+        View v = view.get();
+        ArrayList<String> out = new ArrayList<>();
+        for (int i = 0; i < v.historySize && out.size() < limit; i++) {
+            int at = v.history(i);
+            if (now - v.historyTimes[at] > windowMs) break;
+            String q = v.historyQueries[at];
+            if (q.equals(current) || q.length() < 2) continue;
+            out.add(q);
+        }
+        return out;
+    }
+
+    public void recordNoResult(String q, long ts) {
+        if (TextUtils.isEmpty(q) || q.length() < 2) return;
+        update(v -> {
+            if (v.pendingSize > 0) {
+                int last = v.pending(0);
+                if (v.pendingQueries[last].equals(q) && ts - v.pendingTimes[last] < DUP_COOLDOWN_MS) return v;
+            }
+            return v.withPending(q, ts);
+        });
+    }
+
+    public void markResolved(String q) {
+        if (TextUtils.isEmpty(q)) return;
+        View v = view.get();
+        for (int i = 0; i < v.pendingSize; i++) {
+            int at = v.pending(i);
+            if (v.pendingQueries[at].equals(q) && claim(v, at)) return;
+        }
+    }
+
+    // Claims the newest unresolved no-result query from an earlier session within the window.
+    public String pollUnresolvedFromOlderSession(String current, long now, long windowMs) {
+        View v = view.get();
+        for (int i = 0; i < v.pendingSize; i++) {
+            int at = v.pending(i);
+            if (now - v.pendingTimes[at] > windowMs) break;
+            if (v.pendingSessions[at] >= v.sessionId) continue;
+            String q = v.pendingQueries[at];
+            if (q.equals(current)) continue;
+            if (claim(v, at)) return q;
+        }
+        return "";
+    }
+
+    // False when the entry was already resolved, or its slot has since been reused.
+    private boolean claim(View v, int at) {
+        long seq = v.pendingSeqs[at];
+        long marker = resolved.get(at);
+        return marker != seq && view.get().pendingSeqs[at] == seq && resolved.compareAndSet(at, marker, seq);
+    }
+
+    private void update(UnaryOperator<View> change) {
+        while (true) {
+            View current = view.get();
+            View next = change.apply(current);
+            if (next == current || view.compareAndSet(current, next)) return;
+        }
+    }
+}
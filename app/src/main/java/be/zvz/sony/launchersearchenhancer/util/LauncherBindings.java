@@ -0,0 +1,380 @@
+package be.zvz.sony.launchersearchenhancer.util;
+
+import android.content.ComponentName;
+import android.content.Context;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Launcher model classes and members used by the hooks. They are resolved once per ClassLoader
+// into method handles typed on Object, so per-item code never looks a member up by name. bind()
+// runs at hook registration: a launcher build missing a member that search needs fails there,
+// with the member named in the log. Auto-folder members are validated as a group, and a gap
+// there only disables folders(). Optional members are null when absent.
+public final class LauncherBindings {
+
+    public static final String CLASS_ITEM_INFO = "com.android.launcher3.model.data.ItemInfo";
+    public static final String CLASS_APP_INFO = "com.android.launcher3.model.data.AppInfo";
+    public static final String CLASS_FOLDER_INFO = "com.android.launcher3.model.data.FolderInfo";
+    public static final String CLASS_LAUNCHER = "com.android.launcher3.Launcher";
+    public static final String CLASS_MODEL_WRITER = "com.android.launcher3.model.ModelWriter";
+    public static final String CLASS_ADAPTER_ITEM = "com.android.launcher3.allapps.BaseAllAppsAdapter$AdapterItem";
+    public static final String CLASS_GEHIDE_APPS = "com.sonymobile.launcher.gameenhancer.GeHideAppsList";
+    public static final String CLASS_HOTSEAT_QSB = "com.android.searchlauncher.HotseatQsbWidget";
+    public static final String CLASS_SORT_MODE = "com.sonymobile.launcher.allapps.SortMode";
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ConcurrentHashMap<ClassLoader, LauncherBindings> BOUND = new ConcurrentHashMap<>();
+
+    public final Class<?> itemInfoClass;
+    public final Class<?> appInfoClass;
+
+    private final MethodHandle title;
+    private final MethodHandle componentName;
+    private final MethodHandle targetComponent;
+    private final MethodHandle asAdapterItem;
+    private final MethodHandle geHideApps;
+    private final MethodHandle fallbackSearchView;
+
+    private final Folders folders;
+    private final Throwable foldersFailure;
+
+    private LauncherBindings(ClassLoader cl) throws ReflectiveOperationException {
+        itemInfoClass = cl.loadClass(CLASS_ITEM_INFO);
+        appInfoClass = cl.loadClass(CLASS_APP_INFO);
+
+        title = getter(ReflectionUtils.findField(itemInfoClass, "title"), Object.class);
+        componentName = getter(ReflectionUtils.findField(appInfoClass, "componentName"), Object.class);
+        asAdapterItem = handle(ReflectionUtils.findMethod(cl.loadClass(CLASS_ADAPTER_ITEM), "asApp", appInfoClass));
+        targetComponent = optional(() -> handle(ReflectionUtils.findMethod(itemInfoClass, "getTargetComponent")));
+        geHideApps = optional(() -> handle(ReflectionUtils.findMethod(
+                cl.loadClass(CLASS_GEHIDE_APPS), "getGeHideAppsList", Context.class)));
+        fallbackSearchView = optional(() -> getter(ReflectionUtils.findField(
+                cl.loadClass(CLASS_HOTSEAT_QSB), "mFallbackSearchView"), Object.class));
+
+        Folders f = null;
+        Throwable failure = null;
+        try {
+            f = new Folders(cl, itemInfoClass);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            failure = e;
+        }
+        folders = f;
+        foldersFailure = failure;
+    }
+
+    // Resolves and caches the bindings for a launcher ClassLoader; throws when a member search
+    // depends on is missing.
+    public static LauncherBindings bind(ClassLoader cl) throws ReflectiveOperationException {
+        LauncherBindings b = BOUND.get(cl);
+        if (b != null) return b;
+        b = new LauncherBindings(cl);
+        LauncherBindings raced = BOUND.putIfAbsent(cl, b);
+        return raced != null ? raced : b;
+    }
+
+    public static LauncherBindings of(ClassLoader cl) {
+        try {
+            return bind(cl);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Launcher bindings are unavailable", e);
+        }
+    }
+
+    // Why folders() is unavailable, or null when it is.
+    public Throwable foldersFailure() {
+        return foldersFailure;
+    }
+
+    public Folders folders() {
+        if (folders == null) throw new IllegalStateException("Launcher folder members are unavailable", foldersFailure);
+        return folders;
+    }
+
+    public boolean isApp(Object item) {
+        return appInfoClass.isInstance(item);
+    }
+
+    public String title(Object item) {
+        if (!itemInfoClass.isInstance(item)) return "";
+        try {
+            Object value = (Object) title.invokeExact(item);
+            return value == null ? "" : String.valueOf(value);
+        } catch (Throwable ignored) {
+            return "";
+        }
+    }
+
+    // AppInfo.componentName; null for other items.
+    public ComponentName componentName(Object item) {
+        if (!appInfoClass.isInstance(item)) return null;
+        try {
+            return (ComponentName) (Object) componentName.invokeExact(item);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    // ItemInfo.getTargetComponent(), then AppInfo.componentName.
+    public ComponentName targetComponent(Object item) {
+        if (targetComponent != null && itemInfoClass.isInstance(item)) {
+            try {
+                Object component = (Object) targetComponent.invokeExact(item);
+                if (component instanceof ComponentName) return (ComponentName) component;
+            } catch (Throwable ignored) {
+            }
+        }
+        return componentName(item);
+    }
+
+    public Object adapterItem(Object app) throws Exception {
+        try {
+            return (Object) asAdapterItem.invokeExact(app);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public List<?> geHiddenApps(Context context) {
+        if (geHideApps == null || context == null) return Collections.emptyList();
+        try {
+            Object apps = (Object) geHideApps.invokeExact((Object) context);
+            return apps instanceof List<?> ? (List<?>) apps : Collections.emptyList();
+        } catch (Throwable ignored) {
+            return Collections.emptyList();
+        }
+    }
+
+    public Object fallbackSearchView(Object hotseat) {
+        if (fallbackSearchView == null) return null;
+        try {
+            return (Object) fallbackSearchView.invokeExact(hotseat);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    // Folder, item position and model-writer members used by auto foldering.
+    public static final class Folders {
+        private static final int NO_ID = -1;
+
+        public final Class<?> folderInfoClass;
+        public final Class<?> launcherClass;
+        public final Class<?> sortModeClass;
+        public final Object sortOwnOrder;
+        public final Object sortAlphabetical;
+
+        private final MethodHandle id;
+        private final MethodHandle rank;
+        private final MethodHandle screenId;
+        private final MethodHandle setRank;
+        private final MethodHandle setScreenId;
+        private final MethodHandle contentsField;
+        private final MethodHandle getContents;
+
+        private final MethodHandle newFolder;
+        private final MethodHandle add;
+        private final MethodHandle setTitle;
+        private final MethodHandle updateItemLocations;
+        private final MethodHandle getModelWriter;
+
+        private final MethodHandle addItemToDatabase;
+        private final MethodHandle addItemToDatabaseSync;
+        private final MethodHandle moveAllAppsItemsInDatabase;
+
+        private Folders(ClassLoader cl, Class<?> itemInfoClass) throws ReflectiveOperationException {
+            folderInfoClass = cl.loadClass(CLASS_FOLDER_INFO);
+            launcherClass = cl.loadClass(CLASS_LAUNCHER);
+            sortModeClass = cl.loadClass(CLASS_SORT_MODE);
+            Class<?> modelWriterClass = cl.loadClass(CLASS_MODEL_WRITER);
+            sortOwnOrder = enumValue(sortModeClass, "OWN_ORDER");
+            sortAlphabetical = enumValue(sortModeClass, "ALPHABETICAL");
+
+            id = getter(ReflectionUtils.findField(itemInfoClass, "id"), int.class);
+            rank = getter(ReflectionUtils.findField(itemInfoClass, "rank"), int.class);
+            screenId = getter(ReflectionUtils.findField(itemInfoClass, "screenId"), int.class);
+            setRank = setter(ReflectionUtils.findField(itemInfoClass, "rank"));
+            setScreenId = setter(ReflectionUtils.findField(itemInfoClass, "screenId"));
+            contentsField = optional(() -> getter(ReflectionUtils.findField(folderInfoClass, "contents"), Object.class));
+            getContents = optional(() -> handle(ReflectionUtils.findMethod(folderInfoClass, "getContents")));
+
+            Constructor<?> constructor = folderInfoClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            newFolder = LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+            add = action(ReflectionUtils.findMethod(folderInfoClass, "add", itemInfoClass));
+            setTitle = action(ReflectionUtils.findMethod(folderInfoClass, "setTitle",
+                    CharSequence.class, modelWriterClass));
+            updateItemLocations = action(ReflectionUtils.findMethod(folderInfoClass,
+                    "updateItemLocationsInDatabaseBatch", launcherClass));
+            getModelWriter = handle(ReflectionUtils.findMethod(launcherClass, "getModelWriter"));
+
+            addItemToDatabase = optional(() -> action(ReflectionUtils.findMethod(modelWriterClass,
+                    "addItemToDatabase", itemInfoClass, int.class, int.class, int.class, int.class)));
+            addItemToDatabaseSync = action(ReflectionUtils.findMethod(modelWriterClass,
+                    "addItemToDatabaseSync", itemInfoClass, int.class, int.class, int.class, int.class));
+            moveAllAppsItemsInDatabase = action(ReflectionUtils.findMethod(modelWriterClass,
+                    "moveAllAppsItemsInDatabase", ArrayList.class));
+        }
+
+        public boolean isFolder(Object item) {
+            return folderInfoClass.isInstance(item);
+        }
+
+        public int id(Object item) {
+            return intValue(id, item, NO_ID);
+        }
+
+        public int rank(Object item) {
+            return intValue(rank, item, -1);
+        }
+
+        public int screenId(Object item) {
+            return intValue(screenId, item, -1);
+        }
+
+        public void setPosition(Object item, int rank, int screenId) throws Exception {
+            try {
+                setRank.invokeExact(item, rank);
+                setScreenId.invokeExact(item, screenId);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        public List<?> contents(Object folder) {
+            try {
+                if (contentsField != null) {
+                    Object contents = (Object) contentsField.invokeExact(folder);
+                    if (contents instanceof List<?>) return (List<?>) contents;
+                }
+                if (getContents != null) {
+                    Object contents = (Object) getContents.invokeExact(folder);
+                    if (contents instanceof List<?>) return (List<?>) contents;
+                }
+            } catch (Throwable ignored) {
+            }
+            return Collections.emptyList();
+        }
+
+        public Object newFolder(CharSequence title) throws Exception {
+            try {
+                Object folder = (Object) newFolder.invokeExact();
+                setTitle.invokeExact(folder, (Object) title, (Object) null);
+                return folder;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        public void add(Object folder, Object item) throws Exception {
+            try {
+                add.invokeExact(folder, item);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        public Object modelWriter(Object launcher) throws Exception {
+            try {
+                return (Object) getModelWriter.invokeExact(launcher);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        public void addItemToDatabase(Object writer, Object item, int container, int screenId, int cellX, int cellY)
+                throws Exception {
+            try {
+                MethodHandle h = addItemToDatabase != null ? addItemToDatabase : addItemToDatabaseSync;
+                h.invokeExact(writer, item, container, screenId, cellX, cellY);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        public void moveAllAppsItemsInDatabase(Object writer, ArrayList<Object> items) throws Exception {
+            try {
+                moveAllAppsItemsInDatabase.invokeExact(writer, (Object) items);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        public void updateItemLocations(Object folder, Object launcher) throws Exception {
+            try {
+                updateItemLocations.invokeExact(folder, launcher);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        private static int intValue(MethodHandle getter, Object item, int fallback) {
+            try {
+                return (int) getter.invokeExact(item);
+            } catch (Throwable ignored) {
+                return fallback;
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Object enumValue(Class<?> enumClass, String name) {
+            return Enum.valueOf((Class<Enum>) enumClass.asSubclass(Enum.class), name);
+        }
+    }
+
+    private interface Resolver {
+        MethodHandle resolve() throws ReflectiveOperationException;
+    }
+
+    private static MethodHandle optional(Resolver resolver) {
+        try {
+            return resolver.resolve();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Instance getter as (Object) -> type.
+    private static MethodHandle getter(Field field, Class<?> type) throws IllegalAccessException {
+        return LOOKUP.unreflectGetter(field).asType(MethodType.methodType(type, Object.class));
+    }
+
+    // Instance int setter as (Object, int) -> void.
+    private static MethodHandle setter(Field field) throws IllegalAccessException {
+        return LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, int.class));
+    }
+
+    // The method with reference parameters, the receiver and the result widened to Object and
+    // primitives kept, so call sites can use invokeExact without knowing launcher types.
+    private static MethodHandle handle(Method method) throws IllegalAccessException {
+        MethodHandle h = LOOKUP.unreflect(method);
+        MethodType type = h.type();
+        Class<?>[] params = new Class<?>[type.parameterCount()];
+        for (int i = 0; i < params.length; i++) params[i] = erase(type.parameterType(i));
+        return h.asType(MethodType.methodType(erase(type.returnType()), params));
+    }
+
+    // As handle(), with any result dropped, for calls made only for their effect.
+    private static MethodHandle action(Method method) throws IllegalAccessException {
+        MethodHandle h = handle(method);
+        return h.asType(h.type().changeReturnType(void.class));
+    }
+
+    private static Class<?> erase(Class<?> type) {
+        return type.isPrimitive() ? type : Object.class;
+    }
+
+    private static Exception rethrow(Throwable t) {
+        if (t instanceof Error e) throw e;
+        if (t instanceof Exception e) return e;
+        return new IllegalStateException(t);
+    }
+}
@@ -2,9 +2,17 @@ package be.zvz.sony.launchersearchenhancer.util;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class ReflectionUtils {
 
+    // Lookups on runtime view classes (the all-apps container, its adapter and app list), whose
+    // members may sit on a Sony subclass and so cannot be bound up front. Misses are cached too,
+    // so a probe for an absent method costs one map lookup after the first time.
+    private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Object>> MEMBERS =
+            new ConcurrentHashMap<>();
+    private static final Object MISSING = new Object();
+
     private ReflectionUtils() {}
 
     public static Method findMethod(Class<?> startClass, String name, Class<?>... params)
@@ -31,4 +39,37 @@ public final class ReflectionUtils {
         }
         throw new NoSuchFieldException(name);
     }
+
+    public static Method cachedMethod(Class<?> startClass, String name, Class<?>... params)
+            throws NoSuchMethodException {
+        StringBuilder key = new StringBuilder(name).append('(');
+        for (Class<?> p : params) key.append(p.getName()).append(',');
+        ConcurrentHashMap<String, Object> members = MEMBERS.computeIfAbsent(startClass, c -> new ConcurrentHashMap<>());
+        Object member = members.get(key.toString());
+        if (member == null) {
+            try {
+                member = findMethod(startClass, name, params);
+            } catch (NoSuchMethodException e) {
+                member = MISSING;
+            }
+            members.put(key.toString(), member);
+        }
+        if (member == MISSING) throw new NoSuchMethodException(name);
+        return (Method) member;
+    }
+
+    public static Field cachedField(Class<?> startClass, String name) throws NoSuchFieldException {
+        ConcurrentHashMap<String, Object> members = MEMBERS.computeIfAbsent(startClass, c -> new ConcurrentHashMap<>());
+        Object member = members.get(name);
+        if (member == null) {
+            try {
+                member = findField(startClass, name);
+            } catch (NoSuchFieldException e) {
+                member = MISSING;
+            }
+            members.put(name, member);
+        }
+        if (member == MISSING) throw new NoSuchFieldException(name);
+        return (Field) member;
+    }
 }
@@ -0,0 +1,71 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_21
+    targetCompatibility = JavaVersion.VERSION_21
+}
+
+// Host-side tools compile the Android-free reranker and search cores straight from the app sources,
+// so they measure exactly the code the launcher runs.
+val sharedSources = tasks.register<Sync>("sharedSources") {
+    from("../app/src/main/java") {
+        include(
+            "be/zvz/sony/launchersearchenhancer/reranker/CharTrie.java",
+            "be/zvz/sony/launchersearchenhancer/reranker/JsonTokenizer.java",
+            "be/zvz/sony/launchersearchenhancer/reranker/ModelSpec.java",
+            "be/zvz/sony/launchersearchenhancer/reranker/OnnxEmbedder.java",
+            "be/zvz/sony/launchersearchenhancer/reranker/RankAgreement.java",
+            "be/zvz/sony/launchersearchenhancer/record/AppForms.java",
+            "be/zvz/sony/launchersearchenhancer/record/ScoredApp.java",
+            "be/zvz/sony/launchersearchenhancer/search/AppScorer.java",
+            "be/zvz/sony/launchersearchenhancer/search/QueryProcessor.java",
+            "be/zvz/sony/launchersearchenhancer/store/JournalFile.java",
+            "be/zvz/sony/launchersearchenhancer/text/HangulProcessor.java",
+            "be/zvz/sony/launchersearchenhancer/text/KanaConverter.java",
+            "be/zvz/sony/launchersearchenhancer/text/TextNormalizer.java",
+        )
+    }
+    into(layout.buildDirectory.dir("generated/sharedSources"))
+}
+
+sourceSets {
+    main {
+        java.srcDir(sharedSources)
+    }
+}
+
+dependencies {
+    implementation("com.microsoft.onnxruntime:onnxruntime:1.24.2")
+    implementation("com.google.code.gson:gson:2.11.0")
+}
+
+application {
+    mainClass = "be.zvz.sony.launchersearchenhancer.reranker.DimensionAgreementCheck"
+}
+
+// ./gradlew :bench:embeddingBenchmark -Pmodel=<model.onnx> -Ptokenizer=<tokenizer.json> [-Prounds=N]
+tasks.register<JavaExec>("embeddingBenchmark") {
+    group = "verification"
+    description = "Measures tokenization and single/batched inference latency on this host."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "be.zvz.sony.launchersearchenhancer.reranker.EmbeddingBenchmark"
+    args = listOfNotNull(
+        providers.gradleProperty("model").getOrElse("../app/src/main/assets/semantic/model_qint8_arm64.onnx"),
+        providers.gradleProperty("tokenizer").getOrElse("../app/src/main/assets/semantic/tokenizer.json"),
+        providers.gradleProperty("rounds").orNull,
+    )
+}
+
+// ./gradlew :bench:journalReplay -Pjournal=<journal.bin | dir pulled from files/search-journal> [-Ppasses=N]
+tasks.register<JavaExec>("journalReplay") {
+    group = "verification"
+    description = "Replays a device search journal through the lexical search core."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "be.zvz.sony.launchersearchenhancer.search.JournalReplay"
+    args = listOfNotNull(
+        providers.gradleProperty("journal").orNull,
+        providers.gradleProperty("passes").orNull,
+    )
+}
@@ -0,0 +1,12 @@
+package android.text;
+
+// Host stand-in for the one framework helper the shared search core uses.
+public final class TextUtils {
+
+    private TextUtils() {
+    }
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+}
@@ -0,0 +1,61 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.io.FileInputStream;
+import java.util.List;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtSession;
+
+// Offline check for truncated embedding widths: embeds the reference set once at full width
+// and reports how well each prefix width reproduces the full-width app ranking.
+//
+// usage: DimensionAgreementCheck <model.onnx> <tokenizer.json> [dims...]
+public final class DimensionAgreementCheck {
+
+    private static final int MAX_SEQ_LEN = 48;
+    private static final int TOP_K = 5;
+    private static final int[] DEFAULT_DIMENSIONS = {32, 64, 128, 192, 256};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: DimensionAgreementCheck <model.onnx> <tokenizer.json> [dims...]");
+            System.exit(2);
+        }
+
+        int[] dimensions = DEFAULT_DIMENSIONS;
+        if (args.length > 2) {
+            dimensions = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) dimensions[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        ReferenceSet reference = ReferenceSet.load();
+        List<String> apps = reference.apps();
+        List<String> queries = reference.queries();
+
+        JsonTokenizer tokenizer = JsonTokenizer.fromTokenizerJson(() -> new FileInputStream(args[1]));
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
+             OrtSession session = env.createSession(args[0], opts)) {
+            OnnxEmbedder embedder = new OnnxEmbedder(env, session, tokenizer, MAX_SEQ_LEN,
+                    ModelSpec.Pooling.MEAN, OnnxEmbedder.FULL_DIMENSIONS);
+
+            float[][] appVecs = embedAll(embedder, apps);
+            float[][] queryVecs = embedAll(embedder, queries);
+            System.out.println("reference set: " + apps.size() + " apps, " + queries.size()
+                    + " queries, full width " + appVecs[0].length);
+
+            for (int dims : dimensions) {
+                System.out.println(RankAgreement.compare(queryVecs, appVecs, dims, TOP_K));
+            }
+        }
+    }
+
+    private static float[][] embedAll(OnnxEmbedder embedder, List<String> texts) throws Exception {
+        float[][] out = new float[texts.size()][];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = embedder.embed(texts.get(i));
+            if (out[i] == null) throw new IllegalStateException("no embedding for: " + texts.get(i));
+        }
+        return out;
+    }
+}
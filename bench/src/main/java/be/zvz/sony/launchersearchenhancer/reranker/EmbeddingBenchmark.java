@@ -0,0 +1,120 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtSession;
+
+// Host-side latency benchmark over the reference app texts: tokenization alone, one session
+// run per text, and batched runs. Sessions use one intra-op thread like the launcher does, so
+// numbers track device behaviour closely enough to catch regressions at build time.
+//
+// usage: EmbeddingBenchmark <model.onnx> <tokenizer.json> [rounds]
+public final class EmbeddingBenchmark {
+
+    private static final int MAX_SEQ_LEN = 48;
+    private static final int DEFAULT_ROUNDS = 20;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int[] BATCH_SIZES = {4, 8, 16, 32};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: EmbeddingBenchmark <model.onnx> <tokenizer.json> [rounds]");
+            System.exit(2);
+        }
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+
+        List<String> corpus = ReferenceSet.load().apps();
+        JsonTokenizer tokenizer = JsonTokenizer.fromTokenizerJson(() -> new FileInputStream(args[1]));
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions opts = new OrtSession.SessionOptions()) {
+            opts.setIntraOpNumThreads(1);
+            try (OrtSession session = env.createSession(args[0], opts)) {
+                OnnxEmbedder embedder = new OnnxEmbedder(env, session, tokenizer, MAX_SEQ_LEN,
+                        ModelSpec.Pooling.MEAN, OnnxEmbedder.FULL_DIMENSIONS);
+
+                System.out.println(String.format(Locale.ROOT, "corpus: %d app texts, %d rounds, %s/%s",
+                        corpus.size(), rounds, System.getProperty("os.name"), System.getProperty("os.arch")));
+                tokenization(tokenizer, corpus, rounds);
+                single(embedder, corpus, rounds);
+                for (int batch : BATCH_SIZES) batched(embedder, corpus, rounds, batch);
+            }
+        }
+    }
+
+    private static void tokenization(JsonTokenizer tokenizer, List<String> corpus, int rounds) {
+        JsonTokenizer.Encoded e = new JsonTokenizer.Encoded(MAX_SEQ_LEN);
+        long tokens = 0;
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (String text : corpus) tokens += tokenizer.encode(text, e);
+        }
+
+        tokens = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String text : corpus) tokens += tokenizer.encode(text, e);
+        }
+        long elapsed = System.nanoTime() - start;
+        long texts = (long) rounds * corpus.size();
+        System.out.println(String.format(Locale.ROOT, "tokenize: %.2f us/text, %.1f tokens/text",
+                elapsed / 1_000d / texts, (double) tokens / texts));
+    }
+
+    private static void single(OnnxEmbedder embedder, List<String> corpus, int rounds) throws Exception {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (String text : corpus) embedder.embed(text);
+        }
+
+        long[] samples = new long[rounds * corpus.size()];
+        int n = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String text : corpus) {
+                long t0 = System.nanoTime();
+                embedder.embed(text);
+                samples[n++] = System.nanoTime() - t0;
+            }
+        }
+        report("single", 1, samples, System.nanoTime() - start, samples.length);
+    }
+
+    private static void batched(OnnxEmbedder embedder, List<String> corpus, int rounds, int batch) throws Exception {
+        int batchesPerRound = (corpus.size() + batch - 1) / batch;
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (int b = 0; b < batchesPerRound; b++) embedder.embedBatch(slice(corpus, b, batch));
+        }
+
+        long[] samples = new long[rounds * batchesPerRound];
+        int n = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int b = 0; b < batchesPerRound; b++) {
+                List<String> texts = slice(corpus, b, batch);
+                long t0 = System.nanoTime();
+                embedder.embedBatch(texts);
+                samples[n++] = System.nanoTime() - t0;
+            }
+        }
+        report("batch " + batch, batch, samples, System.nanoTime() - start, (long) rounds * corpus.size());
+    }
+
+    private static List<String> slice(List<String> corpus, int index, int batch) {
+        return corpus.subList(index * batch, Math.min(corpus.size(), (index + 1) * batch));
+    }
+
+    private static void report(String label, int batch, long[] samples, long elapsedNanos, long texts) {
+        Arrays.sort(samples);
+        System.out.println(String.format(Locale.ROOT,
+                "%s: p50=%.2f ms p95=%.2f ms max=%.2f ms per-text=%.2f ms throughput=%.1f texts/s",
+                label, percentile(samples, 0.50), percentile(samples, 0.95), samples[samples.length - 1] / 1e6,
+                elapsedNanos / 1e6 / texts, texts * 1e9 / elapsedNanos));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int i = (int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)));
+        return sorted[i] / 1e6;
+    }
+}
@@ -0,0 +1,31 @@
+package be.zvz.sony.launchersearchenhancer.reranker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// The fixed app texts and queries the host tools measure against (resources/reference_set.txt).
+record ReferenceSet(List<String> apps, List<String> queries) {
+
+    static ReferenceSet load() throws IOException {
+        List<String> apps = new ArrayList<>();
+        List<String> queries = new ArrayList<>();
+        try (InputStream in = ReferenceSet.class.getResourceAsStream("/reference_set.txt");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("app ")) {
+                    String[] parts = line.substring(4).split("\\|", 2);
+                    apps.add(OnnxEmbedder.appText(parts[0], parts.length > 1 ? parts[1] : ""));
+                } else if (line.startsWith("query ")) {
+                    queries.add(line.substring(6));
+                }
+            }
+        }
+        return new ReferenceSet(apps, queries);
+    }
+}
@@ -0,0 +1,208 @@
+package be.zvz.sony.launchersearchenhancer.search;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import be.zvz.sony.launchersearchenhancer.record.AppForms;
+import be.zvz.sony.launchersearchenhancer.record.ScoredApp;
+import be.zvz.sony.launchersearchenhancer.store.JournalFile;
+
+// Replays a search journal pulled from a device (files/search-journal/) through the lexical
+// search core and reports per-keystroke latency next to the on-device numbers, plus how well
+// the replayed ranking agrees with what was shown and clicked. Learning, usage, synonym and
+// semantic signals are not in the journal, so agreement measures the lexical core alone.
+//
+// usage: JournalReplay <journal.bin | journal dir> [passes]
+public final class JournalReplay {
+
+    private static final int DEFAULT_PASSES = 2;
+
+    private record App(String key, AppForms forms) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: JournalReplay <journal.bin | journal dir> [passes]");
+            System.exit(2);
+        }
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PASSES;
+
+        List<JournalFile.Event> events = load(new File(args[0]));
+        System.out.println(String.format(Locale.ROOT, "journal: %d events, %d passes (last one measured)",
+                events.size(), passes));
+        Stats stats = null;
+        for (int p = 0; p < passes; p++) stats = replay(events);
+        if (stats != null) stats.print();
+    }
+
+    private static List<JournalFile.Event> load(File path) throws Exception {
+        File[] files = path.isDirectory()
+                ? path.listFiles((dir, name) -> name.startsWith("journal-") && name.endsWith(".bin"))
+                : new File[]{path};
+        if (files == null) files = new File[0];
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+
+        ArrayList<JournalFile.Event> events = new ArrayList<>();
+        for (File f : files) {
+            try (JournalFile.Reader in = new JournalFile.Reader(new BufferedInputStream(new FileInputStream(f)))) {
+                JournalFile.Event e;
+                while ((e = in.next()) != null) events.add(e);
+            }
+        }
+        return events;
+    }
+
+    private static Stats replay(List<JournalFile.Event> events) {
+        Stats stats = new Stats();
+        List<App> catalog = List.of();
+        Map<Integer, String[]> shownBySession = new HashMap<>();
+        Map<Integer, List<String>> replayedBySession = new HashMap<>();
+
+        for (JournalFile.Event e : events) {
+            switch (e.type()) {
+                case JournalFile.APPS -> catalog = catalog(e);
+                case JournalFile.QUERY -> {
+                    if (catalog.isEmpty()) {
+                        stats.skipped++;
+                        continue;
+                    }
+                    long t0 = System.nanoTime();
+                    List<String> replayed = rank(e.text(), catalog);
+                    stats.replayNanos.add(System.nanoTime() - t0);
+                    stats.deviceNanos.add(e.value() * 1000L);
+                    stats.agreement(e.keys(), replayed);
+                    shownBySession.put(e.session(), e.keys());
+                    replayedBySession.put(e.session(), replayed);
+                }
+                case JournalFile.CLICK -> {
+                    String[] shown = shownBySession.get(e.session());
+                    List<String> replayed = replayedBySession.get(e.session());
+                    if (shown == null || replayed == null) continue;
+                    stats.click(Arrays.asList(shown).indexOf(e.text()), replayed.indexOf(e.text()));
+                }
+                case JournalFile.CLEAR -> {
+                    shownBySession.remove(e.session());
+                    replayedBySession.remove(e.session());
+                }
+                default -> {
+                }
+            }
+        }
+        return stats;
+    }
+
+    private static List<App> catalog(JournalFile.Event e) {
+        ArrayList<App> apps = new ArrayList<>(e.keys().length);
+        for (int i = 0; i < e.keys().length; i++) {
+            apps.add(new App(e.keys()[i], QueryProcessor.buildAppForms(e.titles()[i], e.packages()[i])));
+        }
+        return apps;
+    }
+
+    // Lexical pass of MainModule.buildSearchResults: best score over query variants, then the
+    // launcher's ordering.
+    private static List<String> rank(String rawQuery, List<App> catalog) {
+        LinkedHashSet<String> variants = QueryProcessor.buildQueryVariants(rawQuery);
+        ArrayList<ScoredApp> scored = new ArrayList<>();
+        for (App app : catalog) {
+            int score = AppScorer.scoreQuery(variants, app.forms());
+            if (score > 0) {
+                scored.add(new ScoredApp(app.key(), score, app.forms().titleNorm(), app.forms().pkgNorm(), null, null));
+            }
+        }
+        scored.sort(ScoredApp.RANKING);
+        ArrayList<String> keys = new ArrayList<>(scored.size());
+        for (ScoredApp s : scored) keys.add((String) s.app());
+        return keys;
+    }
+
+    private static final class Stats {
+        final LongList replayNanos = new LongList();
+        final LongList deviceNanos = new LongList();
+        int skipped;
+        int compared;
+        int top1Agree;
+        double overlapSum;
+        int clicks;
+        int shownHit1;
+        int shownHit3;
+        double shownRr;
+        int replayHit1;
+        int replayHit3;
+        double replayRr;
+
+        void agreement(String[] shown, List<String> replayed) {
+            if (shown.length == 0) return;
+            compared++;
+            if (!replayed.isEmpty() && replayed.get(0).equals(shown[0])) top1Agree++;
+            int k = shown.length;
+            int common = 0;
+            for (String key : shown) {
+                int i = replayed.indexOf(key);
+                if (i >= 0 && i < k) common++;
+            }
+            overlapSum += (double) common / k;
+        }
+
+        // Ranks are 0-based, -1 when the clicked app was not listed.
+        void click(int shownRank, int replayRank) {
+            clicks++;
+            if (shownRank == 0) shownHit1++;
+            if (shownRank >= 0 && shownRank < 3) shownHit3++;
+            if (shownRank >= 0) shownRr += 1.0 / (shownRank + 1);
+            if (replayRank == 0) replayHit1++;
+            if (replayRank >= 0 && replayRank < 3) replayHit3++;
+            if (replayRank >= 0) replayRr += 1.0 / (replayRank + 1);
+        }
+
+        void print() {
+            System.out.println(String.format(Locale.ROOT, "keystrokes: %d replayed, %d skipped (no catalog)",
+                    replayNanos.size, skipped));
+            latency("replay", replayNanos);
+            latency("device", deviceNanos);
+            if (compared > 0) {
+                System.out.println(String.format(Locale.ROOT, "agreement: top1=%.3f overlap@shown=%.3f over %d keystrokes",
+                        (double) top1Agree / compared, overlapSum / compared, compared));
+            }
+            if (clicks > 0) {
+                System.out.println(String.format(Locale.ROOT, "clicks: %d", clicks));
+                System.out.println(String.format(Locale.ROOT, "  shown:    hit@1=%.3f hit@3=%.3f mrr=%.3f",
+                        (double) shownHit1 / clicks, (double) shownHit3 / clicks, shownRr / clicks));
+                System.out.println(String.format(Locale.ROOT, "  replayed: hit@1=%.3f hit@3=%.3f mrr=%.3f",
+                        (double) replayHit1 / clicks, (double) replayHit3 / clicks, replayRr / clicks));
+            }
+        }
+
+        private static void latency(String label, LongList samples) {
+            if (samples.size == 0) return;
+            long[] sorted = Arrays.copyOf(samples.values, samples.size);
+            Arrays.sort(sorted);
+            System.out.println(String.format(Locale.ROOT, "%s: p50=%.3f ms p90=%.3f ms p99=%.3f ms max=%.3f ms",
+                    label, percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1] / 1e6));
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            int i = (int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)));
+            return sorted[i] / 1e6;
+        }
+    }
+
+    private static final class LongList {
+        long[] values = new long[256];
+        int size;
+
+        void add(long v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
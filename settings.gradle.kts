@@ -19,3 +19,4 @@ dependencyResolutionManagement {
 rootProject.name = "XposedModuleTemplate"
 include(":app")
 include(":libxposed-compat")
+include(":bench")